@@ -0,0 +1,63 @@
+package hmm.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This program includes reading the corpus files the benchmarks run on.
+ * Files are named relative to the texts folder, which is "texts" (the benchmarks
+ * are run from the top of the repository) unless overridden with -p texts=...
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    /**
+     * @param texts folder with the corpus files.
+     * @param file  file name relative to the texts folder.
+     * @return path of the file as a String, the way HiddenMarkovModel takes it.
+     */
+    static String path(String texts, String file) {
+        Path path = Paths.get(texts, file);
+        if (!Files.isReadable(path)) {
+            throw new IllegalStateException("cannot read " + path.toAbsolutePath()
+                    + "; run from the top of the repository or pass -p texts=<folder>");
+        }
+        return path.toString();
+    }
+
+    /**
+     * @param texts folder with the corpus files.
+     * @param file  sentence file name relative to the texts folder.
+     * @return every sentence split into words.
+     * @throws IOException checks that the file exists.
+     */
+    static List<String[]> sentences(String texts, String file) throws IOException {
+        List<String[]> sentences = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path(texts, file)), StandardCharsets.UTF_8)) {
+            sentences.add(line.split(" "));
+        }
+        return sentences;
+    }
+
+    /**
+     * @param sentences sentences.
+     * @return total number of words.
+     */
+    static long tokens(List<String[]> sentences) {
+        long tokens = 0;
+        for (String[] sentence : sentences) {
+            tokens += sentence.length;
+        }
+        return tokens;
+    }
+}
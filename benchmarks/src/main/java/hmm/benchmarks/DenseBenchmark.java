@@ -0,0 +1,106 @@
+package hmm.benchmarks;
+
+import hmm.CompiledModel;
+import hmm.DenseDecoder;
+import hmm.HiddenMarkovModel;
+import hmm.ViterbiDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This program includes the benchmark of the dense decoder against the
+ * exhaustive Viterbi decoder, on one sentence (the median length of the test
+ * file or the longest one): dense Viterbi, posteriors, and Viterbi with the
+ * confidence of every tag. The forked JVM has the Vector API module, so
+ * kernels=vector runs the vector kernels and kernels=scalar the plain loops.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class DenseBenchmark {
+    @Param("texts")
+    public String texts;
+
+    @Param("brown-train-tags.txt")
+    public String trainTags;
+
+    @Param("brown-train-sentences.txt")
+    public String trainSentences;
+
+    @Param("brown-test-sentences.txt")
+    public String testSentences;
+
+    @Param({"short", "long"})
+    public String length;
+
+    @Param({"vector", "scalar"})
+    public String kernels;
+
+    private CompiledModel model;
+    private String[] words;
+
+    @Setup
+    public void setUp() throws IOException {
+        // read when the dense decoder is first used, which is after this.
+        System.setProperty("hmm.kernels", kernels);
+        model = new HiddenMarkovModel(Corpus.path(texts, trainTags), Corpus.path(texts, trainSentences))
+                .getCompiledModel();
+        List<String[]> sentences = Corpus.sentences(texts, testSentences);
+        sentences.sort((a, b) -> Integer.compare(a.length, b.length));
+        words = length.equals("long") ? sentences.get(sentences.size() - 1) : sentences.get(sentences.size() / 2);
+    }
+
+    /**
+     * Thread-local decoders and buffers, so only the decoding is measured.
+     */
+    @State(Scope.Thread)
+    public static class Decoders {
+        ViterbiDecoder viterbi = new ViterbiDecoder();
+        DenseDecoder dense = new DenseDecoder();
+        int[] tagIds = new int[0];
+        double[] confidence = new double[0];
+
+        int[] tagIds(int length) {
+            if (tagIds.length < length) {
+                tagIds = new int[length];
+                confidence = new double[length];
+            }
+            return tagIds;
+        }
+    }
+
+    @Benchmark
+    public int[] viterbiDecoder(Decoders decoders) {
+        int[] tagIds = decoders.tagIds(words.length);
+        decoders.viterbi.tag(model, words, tagIds);
+        return tagIds;
+    }
+
+    @Benchmark
+    public int[] denseViterbi(Decoders decoders) {
+        int[] tagIds = decoders.tagIds(words.length);
+        decoders.dense.tag(model, words, tagIds);
+        return tagIds;
+    }
+
+    @Benchmark
+    public double[][] posteriors(Decoders decoders) {
+        return decoders.dense.posteriors(model, words);
+    }
+
+    @Benchmark
+    public double[] viterbiWithConfidence(Decoders decoders) {
+        int[] tagIds = decoders.tagIds(words.length);
+        decoders.dense.tag(model, words, tagIds, decoders.confidence);
+        return decoders.confidence;
+    }
+}
@@ -0,0 +1,76 @@
+package hmm.benchmarks;
+
+import hmm.BatchTagger;
+import hmm.HiddenMarkovModel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This program includes the throughput benchmark of tagging a whole test file,
+ * one sentence after the other and through the parallel batch API. The tokens
+ * counter reports words tagged per second.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+    @Param("texts")
+    public String texts;
+
+    @Param("brown-train-tags.txt")
+    public String trainTags;
+
+    @Param("brown-train-sentences.txt")
+    public String trainSentences;
+
+    @Param("brown-test-sentences.txt")
+    public String testSentences;
+
+    private HiddenMarkovModel model;
+    private BatchTagger batchTagger;
+    private List<String[]> sentences;
+    private long tokens;
+
+    @Setup
+    public void setUp() throws IOException {
+        model = new HiddenMarkovModel(Corpus.path(texts, trainTags), Corpus.path(texts, trainSentences));
+        batchTagger = new BatchTagger(model);
+        sentences = Corpus.sentences(texts, testSentences);
+        tokens = Corpus.tokens(sentences);
+    }
+
+    /**
+     * Counts the words tagged, reported by JMH as tokens per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Benchmark
+    public void sequential(Tokens counter, Blackhole blackhole) {
+        for (String[] words : sentences) {
+            String[] tags = new String[words.length];
+            model.tag(words, tags);
+            blackhole.consume(tags);
+        }
+        counter.tokens += tokens;
+    }
+
+    @Benchmark
+    public void batch(Tokens counter, Blackhole blackhole) {
+        blackhole.consume(batchTagger.tagAll(sentences));
+        counter.tokens += tokens;
+    }
+}
@@ -0,0 +1,45 @@
+package hmm.benchmarks;
+
+import hmm.HiddenMarkovModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This program includes the benchmark of training a Hidden Markov Model from a
+ * pair of tag and sentence files (brown-train-* by default).
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrainingBenchmark {
+    @Param("texts")
+    public String texts;
+
+    @Param("brown-train-tags.txt")
+    public String trainTags;
+
+    @Param("brown-train-sentences.txt")
+    public String trainSentences;
+
+    private String fileTags;
+    private String fileSentences;
+
+    @Setup
+    public void setUp() {
+        fileTags = Corpus.path(texts, trainTags);
+        fileSentences = Corpus.path(texts, trainSentences);
+    }
+
+    @Benchmark
+    public HiddenMarkovModel train() throws IOException {
+        return new HiddenMarkovModel(fileTags, fileSentences);
+    }
+}
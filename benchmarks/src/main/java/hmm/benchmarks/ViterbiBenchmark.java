@@ -0,0 +1,73 @@
+package hmm.benchmarks;
+
+import hmm.HiddenMarkovModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This program includes the latency benchmark of tagging one sentence: a short
+ * one (the median length of the test file) and the longest one. One operation is
+ * one sentence, so with -prof gc the gc.alloc.rate.norm column is the number of
+ * bytes allocated per sentence.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ViterbiBenchmark {
+    @Param("texts")
+    public String texts;
+
+    @Param("brown-train-tags.txt")
+    public String trainTags;
+
+    @Param("brown-train-sentences.txt")
+    public String trainSentences;
+
+    @Param("brown-test-sentences.txt")
+    public String testSentences;
+
+    @Param({"short", "long"})
+    public String length;
+
+    private HiddenMarkovModel model;
+    private String[] words;
+
+    @Setup
+    public void setUp() throws IOException {
+        model = new HiddenMarkovModel(Corpus.path(texts, trainTags), Corpus.path(texts, trainSentences));
+        List<String[]> sentences = Corpus.sentences(texts, testSentences);
+        sentences.sort((a, b) -> Integer.compare(a.length, b.length));
+        words = length.equals("long") ? sentences.get(sentences.size() - 1) : sentences.get(sentences.size() / 2);
+    }
+
+    /**
+     * Thread-local tag buffer, so the allocation-free path really allocates nothing.
+     */
+    @State(Scope.Thread)
+    public static class Buffer {
+        String[] tags = new String[0];
+    }
+
+    @Benchmark
+    public String[] tagIntoBuffer(Buffer buffer) {
+        if (buffer.tags.length < words.length) {
+            buffer.tags = new String[words.length];
+        }
+        model.tag(words, buffer.tags);
+        return buffer.tags;
+    }
+
+    @Benchmark
+    public List<String> viterbi() {
+        return model.Viterbi(words);
+    }
+}
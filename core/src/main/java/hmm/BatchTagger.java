@@ -0,0 +1,170 @@
+package hmm;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This program includes batch tagging on top of a trained Hidden Markov Model.
+ * Sentences are split into chunks that are decoded in parallel on an executor
+ * (the common ForkJoinPool by default, or virtual threads where the JDK has them),
+ * and the tags come back in the same order as the sentences went in.
+ * The model is only read, so one model can be shared by every worker. Every
+ * worker thread keeps one decoder and reuses it for every chunk it tags.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class BatchTagger {
+    private static final int DEFAULT_CHUNK_SIZE = 64;  // sentences decoded by one task.
+
+    private final HiddenMarkovModel model;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final ThreadLocal<ViterbiDecoder> decoders;  // decoder of each worker thread, null for the model's own.
+
+    /**
+     * Constructor that tags on the common ForkJoinPool.
+     *
+     * @param model trained model.
+     */
+    public BatchTagger(HiddenMarkovModel model) {
+        this(model, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor that tags on the given executor. The executor is not shut down by this class.
+     *
+     * @param model     trained model.
+     * @param executor  executor the chunks run on.
+     * @param chunkSize number of sentences decoded by one task.
+     */
+    public BatchTagger(HiddenMarkovModel model, ExecutorService executor, int chunkSize) {
+        this(model, executor, chunkSize, null);
+    }
+
+    /**
+     * Constructor that tags on the given executor with decoders from the given factory,
+     * e.g. pruning decoders. The factory is called once per worker thread. The executor
+     * is not shut down by this class.
+     *
+     * @param model     trained model.
+     * @param executor  executor the chunks run on.
+     * @param chunkSize number of sentences decoded by one task.
+     * @param decoders  creates the decoder of each worker thread, or null to use the model's own.
+     */
+    public BatchTagger(HiddenMarkovModel model, ExecutorService executor, int chunkSize,
+                       Supplier<ViterbiDecoder> decoders) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        }
+        this.model = model;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.decoders = decoders == null ? null : ThreadLocal.withInitial(decoders);
+    }
+
+    /**
+     * Creates an executor that starts one virtual thread per task. Virtual threads need
+     * JDK 21 or newer; on older JDKs this falls back to a work-stealing ForkJoinPool.
+     *
+     * @return executor the caller must shut down.
+     */
+    public static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newWorkStealingPool();
+        }
+    }
+
+    /**
+     * Tags every sentence in parallel.
+     *
+     * @param sentences sentences, each an array of words.
+     * @return tags of every sentence, in the same order as the sentences.
+     */
+    public List<String[]> tagAll(List<String[]> sentences) {
+        String[][] results = new String[sentences.size()][];
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int start = 0; start < sentences.size(); start += chunkSize) {
+            List<String[]> chunk = sentences.subList(start, Math.min(start + chunkSize, sentences.size()));
+            int offset = start;
+            chunks.add(executor.submit(() -> {
+                String[][] tags = tagChunk(chunk);
+                System.arraycopy(tags, 0, results, offset, tags.length);
+            }));
+        }
+        for (Future<?> chunk : chunks) {
+            Tasks.await(chunk);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Tags a stream of sentences in parallel. The source is consumed lazily, with a
+     * bounded number of chunks in flight, and the tags come out in the source order.
+     *
+     * @param sentences sentences, each an array of words.
+     * @return tags of every sentence, in the same order as the sentences.
+     */
+    public Stream<String[]> tagStream(Stream<String[]> sentences) {
+        Iterator<String[]> source = sentences.iterator();
+        int maxInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+        Iterator<String[]> tagged = new Iterator<String[]>() {
+            private final Deque<Future<String[][]>> inFlight = new ArrayDeque<>();
+            private String[][] current = new String[0][];
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                while (position == current.length) {
+                    // keep the executor busy without reading the whole source ahead.
+                    while (inFlight.size() < maxInFlight && source.hasNext()) {
+                        List<String[]> chunk = new ArrayList<>(chunkSize);
+                        while (chunk.size() < chunkSize && source.hasNext()) {
+                            chunk.add(source.next());
+                        }
+                        inFlight.add(executor.submit(() -> tagChunk(chunk)));
+                    }
+                    if (inFlight.isEmpty()) {
+                        return false;
+                    }
+                    current = Tasks.await(inFlight.poll());
+                    position = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current[position++];
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(tagged, Spliterator.ORDERED), false)
+                .onClose(sentences::close);
+    }
+
+    /**
+     * Tags one chunk of sentences with this thread's decoder.
+     *
+     * @param chunk sentences.
+     * @return tags of every sentence.
+     */
+    private String[][] tagChunk(List<String[]> chunk) {
+        CompiledModel compiledModel = model.getCompiledModel();
+        ViterbiDecoder decoder = decoders != null ? decoders.get() : model.decoder();
+        String[][] tags = new String[chunk.size()][];
+        for (int i = 0; i < tags.length; i++) {
+            String[] words = chunk.get(i);
+            tags[i] = new String[words.length];
+            decoder.tag(compiledModel, words, tags[i]);
+        }
+        return tags;
+    }
+}
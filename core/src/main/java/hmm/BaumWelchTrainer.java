@@ -0,0 +1,528 @@
+package hmm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * This program includes expectation-maximisation (Baum-Welch) training of a
+ * Hidden Markov Model on untagged sentences, starting from a model trained on
+ * tagged ones. Every iteration tags nothing: it runs forward-backward over every
+ * sentence to get the expected number of times each tag follows each tag and
+ * emits each word (the E-step), then normalises those expected counts into a new
+ * model (the M-step).
+ *
+ * The E-step streams the sentence file in shards of lines and runs the shards on
+ * an executor. Each worker adds into its own accumulator, so the workers never
+ * share a counter, and the accumulators are merged once all shards are done.
+ * The counts of the tagged training corpus are added to the expected counts with
+ * a weight (1 by default), which keeps the tags meaning what they meant in the
+ * tagged corpus; a weight of 0 is plain Baum-Welch.
+ *
+ * The new model keeps the tags, vocabulary and (word, tag) pairs of the starting
+ * model: words the starting model never saw keep their unknown word scores, and
+ * only change the transitions. Training can save the model after every
+ * iteration and picks up from the last saved iteration when run again.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class BaumWelchTrainer {
+    private static final int SHARD_LINES = 1024;  // sentences in one E-step task.
+    private static final String CHECKPOINT_PREFIX = "iteration-";
+    private static final String CHECKPOINT_SUFFIX = ".model";
+
+    private final CompiledModel initial;  // starting model, whose layout every iteration keeps
+    private final ExecutorService executor;
+    private final double[] supervisedTransitions;  // numTags x numTags, weighted tagged transition counts
+    private final double[] supervisedEmissions;  // weighted tagged counts by entry of the initial word index
+    private final double[] supervisedTagTotals;  // weighted tagged words per tag
+
+    /**
+     * Constructor that trains on the common ForkJoinPool and adds the tagged counts with weight 1.
+     *
+     * @param supervised model trained on tagged sentences.
+     * @throws IllegalStateException if the model was loaded without its training counts.
+     */
+    public BaumWelchTrainer(HiddenMarkovModel supervised) {
+        this(supervised, 1, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that trains on the given executor. The executor is not shut down by this class.
+     *
+     * @param supervised       model trained on tagged sentences.
+     * @param supervisedWeight weight of the tagged counts next to the expected ones, 0 for plain Baum-Welch.
+     * @param executor         executor the E-step shards run on.
+     * @throws IllegalArgumentException if the weight is negative.
+     * @throws IllegalStateException if the weight is positive and the model was loaded without its training counts.
+     */
+    public BaumWelchTrainer(HiddenMarkovModel supervised, double supervisedWeight, ExecutorService executor) {
+        if (!(supervisedWeight >= 0)) {
+            throw new IllegalArgumentException("supervised weight must not be negative: " + supervisedWeight);
+        }
+        this.executor = executor;
+        synchronized (supervised) {
+            initial = supervised.getCompiledModel();
+            int numTags = initial.numTags();
+            supervisedTransitions = new double[numTags * numTags];
+            supervisedEmissions = new double[initial.numEntries()];
+            supervisedTagTotals = new double[numTags];
+            if (supervisedWeight > 0) {
+                CorpusCounts counts = supervised.getCounts();
+                if (counts == null) {
+                    throw new IllegalStateException("model was loaded without training counts; use a supervised weight of 0");
+                }
+                addCounts(counts, supervisedWeight);
+            }
+        }
+    }
+
+    /**
+     * Adds tagged counts, mapped onto the layout of the starting model, to the supervised tables.
+     *
+     * @param counts raw POS-word and POS-POS counts.
+     * @param weight factor every count is multiplied by.
+     */
+    private void addCounts(CorpusCounts counts, double weight) {
+        int numTags = initial.numTags();
+        Vocabulary countTags = counts.getTags();
+        Vocabulary countWords = counts.getWords();
+        for (int row = 0; row < countTags.size(); row++) {
+            int from = initial.tagId(countTags.get(row));
+            CountTable transitions = counts.transitionRow(row);
+            for (int slot = 0; slot < transitions.capacity(); slot++) {
+                if (transitions.keyAt(slot) >= 0) {
+                    int to = initial.tagId(countTags.get(transitions.keyAt(slot)));
+                    supervisedTransitions[from * numTags + to] += weight * transitions.countAt(slot);
+                }
+            }
+            CountTable observations = counts.observationRow(row);
+            supervisedTagTotals[from] += weight * observations.total();
+            for (int slot = 0; slot < observations.capacity(); slot++) {
+                if (observations.keyAt(slot) < 0) {
+                    continue;
+                }
+                // a compact starting model may have dropped the pair.
+                int word = initial.wordId(countWords.get(observations.keyAt(slot)));
+                for (int k = initial.emittingOffset(word); k < initial.emittingOffset(word + 1); k++) {
+                    if (initial.emittingTag(k) == from) {
+                        supervisedEmissions[k] += weight * observations.countAt(slot);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs Baum-Welch iterations, optionally saving the model after each one. When the
+     * checkpoint directory already holds iterations of an earlier run, training starts
+     * from the last of them (up to the number of iterations asked for).
+     *
+     * @param fileSentences       untagged text file, one sentence per line.
+     * @param iterations          number of iterations to reach, counting checkpointed ones.
+     * @param checkpointDirectory directory of iteration-N.model files, or null for no checkpoints.
+     * @param progress            called after every iteration run.
+     * @return model after the last iteration.
+     * @throws IOException checks that the files can be read and the checkpoints written.
+     */
+    public HiddenMarkovModel train(String fileSentences, int iterations, String checkpointDirectory,
+                                   Consumer<Iteration> progress) throws IOException {
+        HiddenMarkovModel model = new HiddenMarkovModel(initial);
+        int done = 0;
+        if (checkpointDirectory != null) {
+            Files.createDirectories(Paths.get(checkpointDirectory));
+            done = lastCheckpoint(checkpointDirectory, iterations);
+            if (done > 0) {
+                model = HiddenMarkovModel.load(checkpoint(checkpointDirectory, done).toString());
+            }
+        }
+        for (int iteration = done + 1; iteration <= iterations; iteration++) {
+            Iteration result = iterate(model, fileSentences, iteration);
+            model = result.getModel();
+            if (checkpointDirectory != null) {
+                // written next to the checkpoint and renamed, so a crash never leaves half a file.
+                Path target = checkpoint(checkpointDirectory, iteration);
+                File partial = File.createTempFile(CHECKPOINT_PREFIX, ".partial", target.getParent().toFile());
+                model.save(partial.getPath());
+                Files.move(partial.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            progress.accept(result);
+        }
+        return model;
+    }
+
+    /**
+     * Runs Baum-Welch iterations without checkpoints.
+     *
+     * @param fileSentences untagged text file, one sentence per line.
+     * @param iterations    number of iterations.
+     * @return model after the last iteration.
+     * @throws IOException checks that the file can be read.
+     */
+    public HiddenMarkovModel train(String fileSentences, int iterations) throws IOException {
+        return train(fileSentences, iterations, null, iteration -> { });
+    }
+
+    /**
+     * Runs one Baum-Welch iteration.
+     *
+     * @param model         model to improve: the starting model or the result of an earlier iteration.
+     * @param fileSentences untagged text file, one sentence per line.
+     * @param number        number of the iteration, for reporting.
+     * @return the improved model and the statistics of the iteration.
+     * @throws IOException checks that the file can be read.
+     * @throws IllegalArgumentException if the model does not have the layout of the starting model.
+     */
+    public Iteration iterate(HiddenMarkovModel model, String fileSentences, int number) throws IOException {
+        CompiledModel compiledModel = model.getCompiledModel();
+        checkLayout(compiledModel);
+        long start = System.nanoTime();
+        Queue<Expectations> idle = new ConcurrentLinkedQueue<>();  // accumulators no worker is using
+        Queue<Expectations> all = new ConcurrentLinkedQueue<>();
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+        int maxInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+
+        // E-step: shards of sentences, each added into whichever accumulator is free.
+        try (BufferedReader input = Files.newBufferedReader(Paths.get(fileSentences), StandardCharsets.UTF_8)) {
+            List<String> shard = new ArrayList<>(SHARD_LINES);
+            while (true) {
+                String line = input.readLine();
+                if (line != null && !line.isEmpty()) {
+                    shard.add(line);
+                }
+                boolean end = line == null;
+                if (shard.size() == SHARD_LINES || (end && !shard.isEmpty())) {
+                    List<String> lines = shard;
+                    inFlight.add(executor.submit(() -> {
+                        Expectations expectations = idle.poll();
+                        if (expectations == null) {
+                            expectations = new Expectations(compiledModel);
+                            all.add(expectations);
+                        }
+                        try {
+                            expectations.add(compiledModel, lines);
+                        } finally {
+                            idle.add(expectations);
+                        }
+                        return null;
+                    }));
+                    shard = new ArrayList<>(SHARD_LINES);
+                }
+                while (inFlight.size() >= maxInFlight || (end && !inFlight.isEmpty())) {
+                    Tasks.await(inFlight.poll());
+                }
+                if (end) {
+                    break;
+                }
+            }
+        } finally {
+            // a failure leaves no shards running in the background.
+            for (Future<?> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+
+        // merge step, then M-step.
+        Expectations total = new Expectations(compiledModel);
+        for (Expectations expectations : all) {
+            total.merge(expectations);
+        }
+        CompiledModel next = maximise(compiledModel, total);
+        return new Iteration(number, new HiddenMarkovModel(next), total, System.nanoTime() - start);
+    }
+
+    /**
+     * Normalises expected plus supervised counts into log-probabilities. Rows with no
+     * counts at all keep the scores of the model they were expected under.
+     *
+     * @param model    model the counts were expected under.
+     * @param expected merged expected counts.
+     * @return re-estimated model.
+     */
+    private CompiledModel maximise(CompiledModel model, Expectations expected) {
+        int numTags = model.numTags();
+        double[] previousTransitions = model.transitions();
+        double[] transitions = new double[numTags * numTags];
+        for (int from = 0; from < numTags; from++) {
+            int row = from * numTags;
+            double total = 0;
+            for (int to = 0; to < numTags; to++) {
+                total += expected.transitions[row + to] + supervisedTransitions[row + to];
+            }
+            for (int to = 0; to < numTags; to++) {
+                double count = expected.transitions[row + to] + supervisedTransitions[row + to];
+                transitions[row + to] = total == 0 ? previousTransitions[row + to]
+                        : count > 0 ? Math.log(count / total) : Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        double[] scores = new double[model.numEntries()];
+        for (int k = 0; k < scores.length; k++) {
+            int tag = model.emittingTag(k);
+            double total = expected.tagTotals[tag] + supervisedTagTotals[tag];
+            double count = expected.emissions[k] + supervisedEmissions[k];
+            // an emission that lost all its probability scores like any other unseen one.
+            scores[k] = total == 0 ? model.emittingScore(k)
+                    : count > 0 ? Math.max(CompiledModel.PENALTY_SCORE, Math.log(count / total)) : CompiledModel.PENALTY_SCORE;
+        }
+        return model.withScores(transitions, scores);
+    }
+
+    /**
+     * Checks that a model has the tags, vocabulary and emitting pairs of the starting model.
+     */
+    private void checkLayout(CompiledModel model) {
+        if (model != initial && !model.hasLayoutOf(initial)) {
+            throw new IllegalArgumentException("model does not have the tags and emissions of the starting model");
+        }
+    }
+
+    /**
+     * @return path of the checkpoint of an iteration.
+     */
+    private static Path checkpoint(String checkpointDirectory, int iteration) {
+        return Paths.get(checkpointDirectory, CHECKPOINT_PREFIX + iteration + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * @return highest checkpointed iteration not above maxIteration, 0 if there is none.
+     */
+    private static int lastCheckpoint(String checkpointDirectory, int maxIteration) {
+        for (int iteration = maxIteration; iteration > 0; iteration--) {
+            if (Files.isRegularFile(checkpoint(checkpointDirectory, iteration))) {
+                return iteration;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This program includes the expected counts of one worker, added up over the
+     * sentences it ran forward-backward on.
+     */
+    private static final class Expectations {
+        private final DenseDecoder decoder = new DenseDecoder();
+        private final int numTags;
+        private final double[] transitions;  // numTags x numTags expected transitions
+        private final double[] emissions;  // expected emissions by entry of the word index
+        private final double[] tagTotals;  // expected words per tag
+        private final double[] successors;  // one word's weights * backward / scale
+        private double logProbability;  // of the sentences under the model
+        private long sentences;
+        private long tokens;
+        private long unreachable;  // sentences no tag sequence reaches the end of
+
+        /**
+         * Constructor that creates empty counts for a model's layout.
+         *
+         * @param model model the counts are expected under.
+         */
+        Expectations(CompiledModel model) {
+            numTags = model.numTags();
+            transitions = new double[numTags * numTags];
+            emissions = new double[model.numEntries()];
+            tagTotals = new double[numTags];
+            successors = new double[numTags];
+        }
+
+        /**
+         * Adds the expected counts of a shard of sentences.
+         *
+         * @param model model the counts are expected under.
+         * @param lines untagged sentences.
+         */
+        void add(CompiledModel model, List<String> lines) {
+            double[] probabilities = model.transitionProbabilities();
+            for (String line : lines) {
+                String[] words = line.split(" ");
+                double sentenceLogProbability;
+                try {
+                    sentenceLogProbability = decoder.forwardBackward(model, words);
+                } catch (NoSuchElementException e) {
+                    unreachable++;
+                    continue;
+                }
+                double[] forward = decoder.forward();
+                double[] backward = decoder.backward();
+                double[] weights = decoder.weights();
+                double[] scales = decoder.scales();
+                for (int i = 0; i < words.length; i++) {
+                    int current = i * numTags;
+                    // expected tags of the word, and the words they emit.
+                    for (int tag = 0; tag < numTags; tag++) {
+                        tagTotals[tag] += forward[current + tag] * backward[current + tag];
+                    }
+                    int word = model.wordId(words[i]);
+                    for (int k = model.emittingOffset(word); k < model.emittingOffset(word + 1); k++) {
+                        int tag = model.emittingTag(k);
+                        emissions[k] += forward[current + tag] * backward[current + tag];
+                    }
+                    // expected transitions into the word: from the start state, or from every previous state.
+                    if (i == 0) {
+                        for (int tag = 0; tag < numTags; tag++) {
+                            transitions[CompiledModel.START * numTags + tag] += forward[tag] * backward[tag];
+                        }
+                        continue;
+                    }
+                    int previous = current - numTags;
+                    double inverse = 1 / scales[i];
+                    for (int tag = 0; tag < numTags; tag++) {
+                        successors[tag] = weights[current + tag] * backward[current + tag] * inverse;
+                    }
+                    for (int state = 0; state < numTags; state++) {
+                        double probability = forward[previous + state];
+                        if (probability == 0) {
+                            continue;
+                        }
+                        int row = state * numTags;
+                        for (int tag = 0; tag < numTags; tag++) {
+                            transitions[row + tag] += probability * probabilities[row + tag] * successors[tag];
+                        }
+                    }
+                }
+                logProbability += sentenceLogProbability;
+                sentences++;
+                tokens += words.length;
+            }
+        }
+
+        /**
+         * Adds another worker's counts to these.
+         *
+         * @param other counts of the same model; left unchanged.
+         */
+        void merge(Expectations other) {
+            for (int k = 0; k < transitions.length; k++) {
+                transitions[k] += other.transitions[k];
+            }
+            for (int k = 0; k < emissions.length; k++) {
+                emissions[k] += other.emissions[k];
+            }
+            for (int tag = 0; tag < numTags; tag++) {
+                tagTotals[tag] += other.tagTotals[tag];
+            }
+            logProbability += other.logProbability;
+            sentences += other.sentences;
+            tokens += other.tokens;
+            unreachable += other.unreachable;
+        }
+    }
+
+    /**
+     * This program includes the result of one Baum-Welch iteration.
+     */
+    public static final class Iteration {
+        private final int number;
+        private final HiddenMarkovModel model;
+        private final double logProbability;
+        private final long sentences;
+        private final long tokens;
+        private final long unreachable;
+        private final long elapsedNanos;
+
+        /**
+         * Constructor that keeps the statistics of an iteration.
+         */
+        private Iteration(int number, HiddenMarkovModel model, Expectations expectations, long elapsedNanos) {
+            this.number = number;
+            this.model = model;
+            this.logProbability = expectations.logProbability;
+            this.sentences = expectations.sentences;
+            this.tokens = expectations.tokens;
+            this.unreachable = expectations.unreachable;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return number of the iteration, from 1.
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return re-estimated model.
+         */
+        public HiddenMarkovModel getModel() {
+            return model;
+        }
+
+        /**
+         * @return log-probability of the sentences under the model the iteration started from;
+         *         words the model never saw add their unknown word score, so only compare
+         *         iterations over the same sentences.
+         */
+        public double getLogProbability() {
+            return logProbability;
+        }
+
+        /**
+         * @return sentences counted.
+         */
+        public long getSentences() {
+            return sentences;
+        }
+
+        /**
+         * @return words counted.
+         */
+        public long getTokens() {
+            return tokens;
+        }
+
+        /**
+         * @return sentences left out because no tag sequence reaches their end.
+         */
+        public long getUnreachable() {
+            return unreachable;
+        }
+
+        /**
+         * @return words counted per second of wall time, E-step and M-step together.
+         */
+        public double getTokensPerSecond() {
+            return elapsedNanos == 0 ? 0 : tokens / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("iteration %d: log-probability %.1f (%.4f per word), %d sentences (%d unreachable), "
+                            + "%d words, %.1f s, %.0f words/s", number, logProbability,
+                    tokens == 0 ? 0 : logProbability / tokens, sentences, unreachable, tokens,
+                    elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1), getTokensPerSecond());
+        }
+    }
+
+    /**
+     * Trains a model on tagged files, improves it by Baum-Welch on an untagged file and saves it.
+     * Usage: BaumWelchTrainer train-tags train-sentences untagged-sentences iterations model-file
+     * [checkpoint-directory] [supervised-weight].
+     *
+     * @param args training files, untagged sentence file, number of iterations, file to save the
+     *             model to, then optionally a checkpoint directory and the weight of the tagged counts (1).
+     * @throws IOException checks that the files exist.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5 || args.length > 7) {
+            System.err.println("usage: BaumWelchTrainer <train tags> <train sentences> <untagged sentences> <iterations>"
+                    + " <model file> [checkpoint directory] [supervised weight]");
+            System.exit(2);
+        }
+        HiddenMarkovModel supervised = new HiddenMarkovModel(args[0], args[1]);
+        double supervisedWeight = args.length > 6 ? Double.parseDouble(args[6]) : 1;
+        BaumWelchTrainer trainer = new BaumWelchTrainer(supervised, supervisedWeight, ForkJoinPool.commonPool());
+        HiddenMarkovModel model = trainer.train(args[2], Integer.parseInt(args[3]), args.length > 5 ? args[5] : null,
+                System.out::println);
+        model.save(args[4]);
+    }
+}
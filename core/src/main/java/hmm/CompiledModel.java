@@ -0,0 +1,664 @@
+package hmm;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.*;
+
+/**
+ * This program includes the compiled form of a Hidden Markov Model. Tags and
+ * words are interned to int ids and the log-probabilities are laid out in
+ * primitive arrays, so decoding does not need any String hashing or boxed Doubles:
+ * a dense transition matrix, and an inverted index from every word to the
+ * (tag id, log-probability) pairs of the tags that emitted it in training.
+ * Tags missing from a word's list score the penalty; words that are not in the
+ * vocabulary get their scores from {@link UnknownWords}.
+ * The # (start) tag always has id 0 and its row holds the start transitions.
+ * The word index is held in buffers, so a model loaded from a file reads it
+ * straight from the memory-mapped file (see {@link ModelFile}).
+ *
+ * A compact model (see {@link #compact(CompiledModel, CorpusCounts, int)}) keeps
+ * the emission log-probabilities quantized to shorts, drops emissions seen fewer
+ * than a given number of times, and stores its vocabulary sorted, to run many
+ * models in one heap.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class CompiledModel {
+    public static final String START_TAG = "#";  // tag every sentence starts from.
+    public static final int START = 0;  // id of the # (start) tag.
+    public static final double PENALTY_SCORE = -1000;  // score given to a word not seen by a state.
+
+    private final String[] tags;  // tag id -> tag
+    private final Map<String, Integer> tagIds;  // tag -> tag id
+    private final WordIndex vocabulary;  // word <-> word id
+    private final int numTags;
+    private final double[] transitions;  // numTags x numTags, row = previous tag, -Infinity when never seen.
+    private final IntBuffer emittingOffsets;  // word id -> start of its entries, numWords + 2 entries (last word is unknown).
+    private final IntBuffer emittingTags;  // tag ids that emitted each word in training, grouped by word, ascending.
+    private final DoubleBuffer emittingScores;  // log-probability of the word given the tag plus the tag's norm, parallel to emittingTags; null when quantized.
+    private final double[] emittingNorms;  // tag id -> subtracted from the tag's emitting scores: log count total when compiled from counts, else 0.
+    private final ShortBuffer quantizedScores;  // -log-probability / quantizationStep, rounded, parallel to emittingTags; null unless compact.
+    private final double quantizationStep;  // log-probability of one quantization unit, 0 unless compact.
+    private final UnknownWords unknownWords;  // scores of words that are not in the vocabulary.
+    private volatile double[] transitionProbabilities;  // exp(transitions), built the first time forward-backward runs.
+
+    /**
+     * Constructor that wraps already compiled tables.
+     *
+     * @param tags            tag names indexed by tag id, tags[0] must be #.
+     * @param vocabulary      words mapped to word ids.
+     * @param transitions     row-major transition log-probabilities.
+     * @param emittingOffsets start of every word's entries, with one row for the unknown word and an end marker.
+     * @param emittingTags    tag ids that emitted each word.
+     * @param emittingScores  log-probability of the word given each of those tags.
+     * @param unknownWords    scores of words that are not in the vocabulary.
+     */
+    CompiledModel(String[] tags, WordIndex vocabulary, double[] transitions, IntBuffer emittingOffsets,
+                  IntBuffer emittingTags, DoubleBuffer emittingScores, UnknownWords unknownWords) {
+        this(tags, vocabulary, transitions, emittingOffsets, emittingTags, emittingScores, new double[tags.length],
+                null, 0, unknownWords);
+    }
+
+    /**
+     * Constructor that wraps the already compiled tables of a compact model.
+     *
+     * @param tags             tag names indexed by tag id, tags[0] must be #.
+     * @param vocabulary       words mapped to word ids.
+     * @param transitions      row-major transition log-probabilities.
+     * @param emittingOffsets  start of every word's entries, with one row for the unknown word and an end marker.
+     * @param emittingTags     tag ids that emitted each word.
+     * @param quantizedScores  -log-probability of the word given each of those tags, in quantization steps.
+     * @param quantizationStep log-probability of one quantization step.
+     * @param unknownWords     scores of words that are not in the vocabulary.
+     */
+    CompiledModel(String[] tags, WordIndex vocabulary, double[] transitions, IntBuffer emittingOffsets,
+                  IntBuffer emittingTags, ShortBuffer quantizedScores, double quantizationStep, UnknownWords unknownWords) {
+        this(tags, vocabulary, transitions, emittingOffsets, emittingTags, null, new double[tags.length],
+                quantizedScores, quantizationStep, unknownWords);
+    }
+
+    /**
+     * Constructor that wraps already compiled tables, with either exact or quantized emission scores.
+     */
+    private CompiledModel(String[] tags, WordIndex vocabulary, double[] transitions, IntBuffer emittingOffsets,
+                          IntBuffer emittingTags, DoubleBuffer emittingScores, double[] emittingNorms,
+                          ShortBuffer quantizedScores, double quantizationStep, UnknownWords unknownWords) {
+        this.tags = tags;
+        this.numTags = tags.length;
+        this.vocabulary = vocabulary;
+        this.transitions = transitions;
+        this.emittingOffsets = emittingOffsets;
+        this.emittingTags = emittingTags;
+        this.emittingScores = emittingScores;
+        this.emittingNorms = emittingNorms;
+        this.quantizedScores = quantizedScores;
+        this.quantizationStep = quantizationStep;
+        this.unknownWords = unknownWords;
+        this.tagIds = new HashMap<>();
+        for (int i = 0; i < tags.length; i++) {
+            tagIds.put(tags[i], i);
+        }
+    }
+
+    /**
+     * Compiles raw counts into log-probability tables. When a previous compilation of
+     * the same counts is given, the work is proportional to what changed since then:
+     * new words are appended to its vocabulary, only the changed transition rows are
+     * normalised again, and only the entries of the words counted since then are
+     * rebuilt, the rest being copied in bulk. Emission entries hold log counts and are
+     * normalised by a per-tag log total, so a changed tag row is normalised again by
+     * updating one number. Unknown word scores are only learned again when a word
+     * became or stopped being seen exactly once. The previous model is left
+     * untouched, so it can keep decoding while the new one is built.
+     * Word ids are the ids of the counts' vocabulary.
+     *
+     * @param counts              raw POS-word and POS-POS counts; its changed rows are marked clean.
+     * @param previous            earlier compilation of the same counts, or null to compile every row.
+     * @param unknownWordFeatures score unknown words by their shape and suffix instead of the penalty.
+     * @return compiled model.
+     */
+    static CompiledModel compile(CorpusCounts counts, CompiledModel previous, boolean unknownWordFeatures) {
+        Vocabulary countTags = counts.getTags();
+
+        // keep the previous tag ids and append new tags, otherwise use HashSet order, which
+        // breaks equal-scoring paths the same way the original map-based decoder did.
+        List<String> tagOrder = new ArrayList<>();
+        if (previous == null) {
+            Set<String> tagSet = new HashSet<>();
+            for (int tag = 0; tag < countTags.size(); tag++) {
+                tagSet.add(countTags.get(tag));
+            }
+            tagSet.remove(START_TAG);
+            tagOrder.add(START_TAG);
+            tagOrder.addAll(tagSet);
+        }
+        else {
+            tagOrder.addAll(Arrays.asList(previous.tags));
+            for (int tag = 0; tag < countTags.size(); tag++) {
+                if (previous.tagId(countTags.get(tag)) < 0) {
+                    tagOrder.add(countTags.get(tag));
+                }
+            }
+        }
+        String[] tags = tagOrder.toArray(new String[0]);
+        int numTags = tags.length;
+        Map<String, Integer> tagIds = new HashMap<>();
+        for (int i = 0; i < tags.length; i++) {
+            tagIds.put(tags[i], i);
+        }
+        int[] compiledTag = new int[countTags.size()];  // counts tag id -> compiled tag id
+        for (int tag = 0; tag < compiledTag.length; tag++) {
+            compiledTag[tag] = tagIds.get(countTags.get(tag));
+        }
+
+        // word ids are the ids of the counts, which only ever grow, so earlier ids stay valid
+        // and the new words are appended.
+        WordIndex vocabulary = previous == null ? new WordIndex(wordsOf(counts.getWords()), false)
+                : previous.vocabulary.append(counts.getWords());
+        int numWords = vocabulary.size();
+
+        BitSet dirtyTransitions = counts.dirtyTransitionRows();
+        BitSet dirtyObservations = counts.dirtyObservationRows();
+        boolean sameTags = previous != null && previous.numTags == numTags;
+        double[] transitions = new double[numTags * numTags];
+        double[] emittingNorms = new double[numTags];
+        if (sameTags) {
+            System.arraycopy(previous.transitions, 0, transitions, 0, transitions.length);
+            System.arraycopy(previous.emittingNorms, 0, emittingNorms, 0, numTags);
+        }
+        else {
+            // new tags change the table layout, so every row is normalised again.
+            Arrays.fill(transitions, Double.NEGATIVE_INFINITY);
+            dirtyTransitions.set(0, countTags.size());
+            dirtyObservations.set(0, countTags.size());
+        }
+
+        // converts the changed transition rows into log-probabilities.
+        for (int row = dirtyTransitions.nextSetBit(0); row >= 0; row = dirtyTransitions.nextSetBit(row + 1)) {
+            CountTable counted = counts.transitionRow(row);
+            int from = compiledTag[row] * numTags;
+            Arrays.fill(transitions, from, from + numTags, Double.NEGATIVE_INFINITY);
+            for (int slot = 0; slot < counted.capacity(); slot++) {
+                int to = counted.keyAt(slot);
+                if (to >= 0) {
+                    transitions[from + compiledTag[to]] = Math.log(counted.countAt(slot) / (double) counted.total());
+                }
+            }
+        }
+
+        // a changed word row is normalised again through its tag's log total.
+        for (int row = dirtyObservations.nextSetBit(0); row >= 0; row = dirtyObservations.nextSetBit(row + 1)) {
+            long total = counts.observationRow(row).total();
+            emittingNorms[compiledTag[row]] = total == 0 ? 0 : Math.log(total);
+        }
+
+        // probing every tag row for each changed word costs more than rebuilding the index
+        // when most words changed.
+        BitSet dirtyWords = counts.dirtyWords();
+        Emissions emissions = sameTags && (long) dirtyWords.cardinality() * numTags <= previous.numEntries()
+                ? updateEmissions(counts, previous, compiledTag, numWords) : buildEmissions(counts, compiledTag, numWords);
+
+        UnknownWords unknownWords;
+        if (sameTags && !counts.singletonsChanged() && previous.unknownWords.hasSignatures() == unknownWordFeatures) {
+            // the words seen once are the ones the previous scores were learned from.
+            unknownWords = previous.unknownWords;
+        }
+        else {
+            unknownWords = unknownWordFeatures ? UnknownWords.train(counts, compiledTag, numTags)
+                    : UnknownWords.penalty(numTags);
+        }
+        counts.markClean();
+        return new CompiledModel(tags, vocabulary, transitions, emissions.offsets, emissions.tags, emissions.scores,
+                emittingNorms, null, 0, unknownWords);
+    }
+
+    /**
+     * @return every string of a vocabulary, by id.
+     */
+    private static String[] wordsOf(Vocabulary vocabulary) {
+        String[] strings = new String[vocabulary.size()];
+        for (int id = 0; id < strings.length; id++) {
+            strings[id] = vocabulary.get(id);
+        }
+        return strings;
+    }
+
+    /**
+     * Builds the word index from every word row, grouping the entries by word.
+     *
+     * @return word index.
+     */
+    private static Emissions buildEmissions(CorpusCounts counts, int[] compiledTag, int numWords) {
+        int[] emittingOffsets = new int[numWords + 2];
+        for (int row = 0; row < compiledTag.length; row++) {
+            CountTable counted = counts.observationRow(row);
+            for (int slot = 0; slot < counted.capacity(); slot++) {
+                if (counted.keyAt(slot) >= 0) {
+                    emittingOffsets[counted.keyAt(slot) + 1]++;
+                }
+            }
+        }
+        for (int word = 0; word <= numWords; word++) {
+            emittingOffsets[word + 1] += emittingOffsets[word];
+        }
+        int[] emittingTags = new int[emittingOffsets[numWords + 1]];
+        double[] emittingScores = new double[emittingTags.length];
+        int[] fill = Arrays.copyOf(emittingOffsets, numWords + 1);
+        for (int row = 0; row < compiledTag.length; row++) {
+            CountTable counted = counts.observationRow(row);
+            for (int slot = 0; slot < counted.capacity(); slot++) {
+                int word = counted.keyAt(slot);
+                if (word >= 0) {
+                    int at = fill[word]++;
+                    emittingTags[at] = compiledTag[row];
+                    emittingScores[at] = Math.log(counted.countAt(slot));
+                }
+            }
+        }
+        for (int word = 0; word < numWords; word++) {
+            sortByTag(emittingTags, emittingScores, emittingOffsets[word], emittingOffsets[word + 1]);
+        }
+        return new Emissions(emittingOffsets, emittingTags, emittingScores);
+    }
+
+    /**
+     * Builds the word index from a previous one, rebuilding only the entries of the
+     * words counted since then (by probing every tag row for them) and copying the
+     * entries of every other word in runs.
+     *
+     * @return word index.
+     */
+    private static Emissions updateEmissions(CorpusCounts counts, CompiledModel previous, int[] compiledTag,
+                                             int numWords) {
+        BitSet dirtyWords = counts.dirtyWords();
+        int previousWords = previous.numWords();
+        int[] changedOffsets = new int[dirtyWords.cardinality() + 1];
+        int[] changedTags = new int[(changedOffsets.length - 1) * compiledTag.length];
+        double[] changedScores = new double[changedTags.length];
+        int changed = 0;
+        int entries = previous.numEntries();
+        for (int word = dirtyWords.nextSetBit(0); word >= 0; word = dirtyWords.nextSetBit(word + 1)) {
+            int at = changedOffsets[changed];
+            for (int row = 0; row < compiledTag.length; row++) {
+                long count = counts.observationRow(row).get(word);
+                if (count > 0) {
+                    changedTags[at] = compiledTag[row];
+                    changedScores[at++] = Math.log(count);
+                }
+            }
+            sortByTag(changedTags, changedScores, changedOffsets[changed], at);
+            changedOffsets[++changed] = at;
+            if (word < previousWords) {
+                entries -= previous.emittingOffset(word + 1) - previous.emittingOffset(word);
+            }
+        }
+        entries += changedOffsets[changed];
+
+        int[] emittingOffsets = new int[numWords + 2];
+        int[] emittingTags = new int[entries];
+        double[] emittingScores = new double[entries];
+        int at = 0;
+        int word = 0;
+        changed = 0;
+        while (word < numWords) {
+            int next = dirtyWords.nextSetBit(word);
+            int runEnd = next < 0 ? numWords : next;
+            // copies the entries of the unchanged words up to the next changed one.
+            int copyEnd = Math.min(runEnd, previousWords);
+            if (word < copyEnd) {
+                int from = previous.emittingOffset(word);
+                int length = previous.emittingOffset(copyEnd) - from;
+                previous.emittingTags.get(from, emittingTags, at, length);
+                previous.emittingScores.get(from, emittingScores, at, length);
+                for (int w = word; w < copyEnd; w++) {
+                    emittingOffsets[w] = previous.emittingOffset(w) - from + at;
+                }
+                at += length;
+            }
+            // new words that were never counted (e.g. on a line that failed) have no entries.
+            for (int w = Math.max(word, copyEnd); w < runEnd; w++) {
+                emittingOffsets[w] = at;
+            }
+            if (next < 0) {
+                break;
+            }
+            emittingOffsets[next] = at;
+            int length = changedOffsets[changed + 1] - changedOffsets[changed];
+            System.arraycopy(changedTags, changedOffsets[changed], emittingTags, at, length);
+            System.arraycopy(changedScores, changedOffsets[changed], emittingScores, at, length);
+            at += length;
+            changed++;
+            word = next + 1;
+        }
+        // the unknown word has no entries.
+        emittingOffsets[numWords] = at;
+        emittingOffsets[numWords + 1] = at;
+        return new Emissions(emittingOffsets, emittingTags, emittingScores);
+    }
+
+    /**
+     * This program includes the tables of a word index while it is being compiled.
+     */
+    private static final class Emissions {
+        private final IntBuffer offsets;  // word id -> start of its entries
+        private final IntBuffer tags;  // tag id of every entry
+        private final DoubleBuffer scores;  // log count of every entry
+
+        private Emissions(int[] offsets, int[] tags, double[] scores) {
+            this.offsets = IntBuffer.wrap(offsets);
+            this.tags = IntBuffer.wrap(tags);
+            this.scores = DoubleBuffer.wrap(scores);
+        }
+    }
+
+    /**
+     * Sorts a short run of (tag, score) pairs by tag with insertion sort.
+     */
+    private static void sortByTag(int[] tags, double[] scores, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int tag = tags[i];
+            double score = scores[i];
+            int j = i - 1;
+            while (j >= from && tags[j] > tag) {
+                tags[j + 1] = tags[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            tags[j + 1] = tag;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Builds the compact form of a model. Emissions seen fewer than minCount times in
+     * training are dropped (they score the penalty, and a word left without emissions
+     * is treated as unknown); the remaining log-probabilities keep their original
+     * values up to quantization. Words are renumbered in sorted order and found by
+     * binary search.
+     *
+     * Every log-probability is stored as a short count of steps of size
+     * maxLoss / 32767, where maxLoss is the largest -log-probability kept, so each
+     * score is within step / 2 of the exact value (about 1.6e-4 for brown-train)
+     * and a path of n words scores within n * step / 2 of its exact score.
+     * Transitions are kept exact; they are numTags x numTags and tiny next to the emissions.
+     *
+     * @param model    model to compact; left unchanged.
+     * @param counts   counts the model was compiled from, or null when minCount is at most 1.
+     * @param minCount fewest times an emission must have been seen to be kept.
+     * @return compact model.
+     * @throws IllegalArgumentException if pruning by count is asked for without counts.
+     */
+    static CompiledModel compact(CompiledModel model, CorpusCounts counts, int minCount) {
+        if (minCount > 1 && counts == null) {
+            throw new IllegalArgumentException("pruning emissions by count needs the training counts");
+        }
+        int numWords = model.numWords();
+        int numEntries = model.numEntries();
+
+        // marks the emissions that are kept.
+        int[] countTag = new int[model.numTags];  // compiled tag id -> counts tag id
+        for (int tag = 0; tag < countTag.length && counts != null; tag++) {
+            countTag[tag] = counts.getTags().id(model.tags[tag]);
+        }
+        boolean[] kept = new boolean[numEntries];
+        double maxLoss = 0;
+        for (int word = 0; word < numWords; word++) {
+            for (int k = model.emittingOffset(word); k < model.emittingOffset(word + 1); k++) {
+                kept[k] = minCount <= 1 || counts.observationRow(countTag[model.emittingTag(k)]).get(word) >= minCount;
+                if (kept[k]) {
+                    maxLoss = Math.max(maxLoss, -model.emittingScore(k));
+                }
+            }
+        }
+
+        // keeps the words that still emit, in sorted order.
+        List<Integer> keptWords = new ArrayList<>();
+        for (int word = 0; word < numWords; word++) {
+            for (int k = model.emittingOffset(word); k < model.emittingOffset(word + 1); k++) {
+                if (kept[k]) {
+                    keptWords.add(word);
+                    break;
+                }
+            }
+        }
+        String[] words = model.words();
+        keptWords.sort((a, b) -> WordIndex.compare(words[a], words[b]));
+
+        double step = maxLoss > 0 ? maxLoss / Short.MAX_VALUE : 1;
+        int[] emittingOffsets = new int[keptWords.size() + 2];
+        int[] emittingTags = new int[numEntries];
+        short[] quantizedScores = new short[numEntries];
+        String[] sortedWords = new String[keptWords.size()];
+        int entries = 0;
+        for (int id = 0; id < keptWords.size(); id++) {
+            int word = keptWords.get(id);
+            sortedWords[id] = words[word];
+            emittingOffsets[id] = entries;
+            for (int k = model.emittingOffset(word); k < model.emittingOffset(word + 1); k++) {
+                if (kept[k]) {
+                    emittingTags[entries] = model.emittingTag(k);
+                    quantizedScores[entries++] = (short) Math.round(-model.emittingScore(k) / step);
+                }
+            }
+        }
+        // the unknown word has no entries.
+        emittingOffsets[keptWords.size()] = entries;
+        emittingOffsets[keptWords.size() + 1] = entries;
+        return new CompiledModel(model.tags, new WordIndex(sortedWords, true), model.transitions,
+                IntBuffer.wrap(emittingOffsets), IntBuffer.wrap(Arrays.copyOf(emittingTags, entries)),
+                ShortBuffer.wrap(Arrays.copyOf(quantizedScores, entries)), step, model.unknownWords);
+    }
+
+    /**
+     * Builds a model with the same tags, vocabulary and emitting (word, tag) pairs as
+     * this one but new log-probabilities, e.g. re-estimated by {@link BaumWelchTrainer}.
+     *
+     * @param transitions    row-major transition log-probabilities, numTags x numTags.
+     * @param emittingScores log-probabilities by entry, see {@link #emittingScore(int)}.
+     * @return model with exact (not quantized) scores; this model is left unchanged.
+     */
+    CompiledModel withScores(double[] transitions, double[] emittingScores) {
+        return new CompiledModel(tags, vocabulary, transitions, emittingOffsets, emittingTags,
+                DoubleBuffer.wrap(emittingScores), unknownWords);
+    }
+
+    /**
+     * @param other model.
+     * @return whether the other model has the same tags, vocabulary size and emitting (word, tag) pairs.
+     */
+    boolean hasLayoutOf(CompiledModel other) {
+        return Arrays.equals(tags, other.tags) && numWords() == other.numWords()
+                && emittingOffsets.equals(other.emittingOffsets) && emittingTags.equals(other.emittingTags);
+    }
+
+    /**
+     * @return whether the emission scores are quantized (see {@link #compact(CompiledModel, CorpusCounts, int)}).
+     */
+    public boolean isCompact() {
+        return quantizedScores != null;
+    }
+
+    /**
+     * @return size of one quantization step of the emission log-probabilities, 0 for exact scores;
+     *         every quantized score is within half a step of the exact one.
+     */
+    public double getQuantizationStep() {
+        return quantizationStep;
+    }
+
+    /**
+     * @return approximate size of the model's tables, in bytes: the vocabulary, the transition
+     *         and emission tables, and the unknown word scores (not the decoders' caches). For a model
+     *         loaded from a file most of it is the mapped file rather than heap.
+     */
+    public long estimatedBytes() {
+        long bytes = vocabulary.estimatedBytes();
+        bytes += 16 + 8L * transitions.length;
+        bytes += 2 * 16 + 4L * (emittingOffsets.capacity() + emittingTags.capacity());
+        bytes += quantizedScores == null ? 16 + 8L * emittingScores.capacity() : 16 + 2L * quantizedScores.capacity();
+        bytes += unknownWords.estimatedBytes();
+        return bytes;
+    }
+
+    /**
+     * @return number of tags, including the # (start) tag.
+     */
+    public int numTags() {
+        return numTags;
+    }
+
+    /**
+     * @return number of words in the vocabulary.
+     */
+    public int numWords() {
+        return vocabulary.size();
+    }
+
+    /**
+     * @return vocabulary indexed by word id.
+     */
+    public String[] words() {
+        String[] words = new String[vocabulary.size()];
+        for (int word = 0; word < words.length; word++) {
+            words[word] = vocabulary.get(word);
+        }
+        return words;
+    }
+
+    /**
+     * @param id tag id.
+     * @return tag name.
+     */
+    public String tag(int id) {
+        return tags[id];
+    }
+
+    /**
+     * @param tag tag name.
+     * @return tag id, or -1 if the tag is unknown.
+     */
+    public int tagId(String tag) {
+        Integer id = tagIds.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param word word.
+     * @return word id, or the unknown word id if the word was never seen in training.
+     */
+    public int wordId(String word) {
+        int id = vocabulary.id(word);
+        return id < 0 ? vocabulary.size() : id;
+    }
+
+    /**
+     * @param word word id.
+     * @return true if the id is the unknown word id.
+     */
+    public boolean isUnknown(int word) {
+        return word == vocabulary.size();
+    }
+
+    /**
+     * Fills in the emission score of every tag for a word, scattering the word's
+     * entries over the penalty score.
+     *
+     * @param word      word id; the unknown word id gives every tag the penalty score.
+     * @param scoresOut receives numTags() scores.
+     */
+    public void emissions(int word, double[] scoresOut) {
+        Arrays.fill(scoresOut, 0, numTags, PENALTY_SCORE);
+        int end = emittingOffsets.get(word + 1);
+        if (quantizedScores == null) {
+            for (int k = emittingOffsets.get(word); k < end; k++) {
+                int tag = emittingTags.get(k);
+                scoresOut[tag] = emittingScores.get(k) - emittingNorms[tag];
+            }
+        }
+        else {
+            for (int k = emittingOffsets.get(word); k < end; k++) {
+                scoresOut[emittingTags.get(k)] = -quantizedScores.get(k) * quantizationStep;
+            }
+        }
+    }
+
+    /**
+     * @return scores of words that are not in the vocabulary.
+     */
+    public UnknownWords getUnknownWords() {
+        return unknownWords;
+    }
+
+    /**
+     * @return row-major transition log-probabilities; callers must not modify it.
+     */
+    double[] transitions() {
+        return transitions;
+    }
+
+    /**
+     * @return row-major transition probabilities, exp of {@link #transitions()}, 0 when never seen;
+     *         callers must not modify it.
+     */
+    double[] transitionProbabilities() {
+        double[] probabilities = transitionProbabilities;
+        if (probabilities == null) {
+            // two threads may both build it; either copy is the same.
+            probabilities = new double[transitions.length];
+            for (int k = 0; k < transitions.length; k++) {
+                probabilities[k] = Math.exp(transitions[k]);
+            }
+            transitionProbabilities = probabilities;
+        }
+        return probabilities;
+    }
+
+    /**
+     * @return vocabulary of the model.
+     */
+    WordIndex vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @return number of (word, tag) entries in the word index.
+     */
+    int numEntries() {
+        return emittingTags.capacity();
+    }
+
+    /**
+     * @param word word id, up to numWords() + 1.
+     * @return start of the word's entries; emittingOffset(word + 1) is their end.
+     */
+    int emittingOffset(int word) {
+        return emittingOffsets.get(word);
+    }
+
+    /**
+     * @param entry entry of the word index.
+     * @return id of the tag that emitted the entry's word in training; ascending within a word.
+     */
+    int emittingTag(int entry) {
+        return emittingTags.get(entry);
+    }
+
+    /**
+     * @param entry entry of the word index.
+     * @return log-probability of the entry's word given its tag, dequantized for a compact model.
+     */
+    double emittingScore(int entry) {
+        return quantizedScores == null ? emittingScores.get(entry) - emittingNorms[emittingTags.get(entry)]
+                : -quantizedScores.get(entry) * quantizationStep;
+    }
+
+    /**
+     * @param entry entry of the word index of a compact model.
+     * @return -log-probability of the entry's word given its tag, in quantization steps.
+     */
+    short quantizedScore(int entry) {
+        return quantizedScores.get(entry);
+    }
+}
@@ -0,0 +1,341 @@
+package hmm;
+
+import java.util.*;
+
+/**
+ * This program includes the raw counts a Hidden Markov Model is trained from:
+ * how often each tag emits each word and how often each tag follows another
+ * (including the # (start) tag). Counts for separate parts of a corpus can be
+ * collected independently and merged, so training can be split across threads.
+ * Words are counted lower-cased; the first surface form of a word (e.g. "Boston")
+ * is kept too when it differs, so the shapes of rare words can still be learned.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class CorpusCounts {
+    private final Vocabulary tags = new Vocabulary();  // tag ids, # (start) is 0
+    private final Vocabulary words = new Vocabulary();  // word ids
+    private final List<CountTable> transitions = new ArrayList<>();  // previous tag id -> next tag id counts
+    private final List<CountTable> observations = new ArrayList<>();  // tag id -> word id counts
+    private final BitSet dirtyTransitions = new BitSet();  // tag ids whose transition row changed since markClean()
+    private final BitSet dirtyObservations = new BitSet();  // tag ids whose word row changed since markClean()
+    private final BitSet dirtyWords = new BitSet();  // word ids counted since markClean()
+    private long[] wordTotals = new long[64];  // word id -> times the word was counted
+    private String[] surfaces = new String[64];  // word id -> first surface form, null when already lower-case
+    private boolean singletonsChanged;  // a word became or stopped being seen exactly once since markClean()
+    private long sentences;  // number of sentences counted.
+    private long tokens;  // number of words counted.
+
+    /**
+     * Constructor that creates empty counts.
+     */
+    public CorpusCounts() {
+        internTag(CompiledModel.START_TAG);
+    }
+
+    /**
+     * Counts one tagged sentence.
+     *
+     * @param sentenceWords words of the sentence.
+     * @param sentenceTags  tag of every word.
+     * @throws IllegalArgumentException if there is not exactly one tag per word.
+     */
+    public void addSentence(String[] sentenceWords, String[] sentenceTags) {
+        if (sentenceWords.length != sentenceTags.length) {
+            throw new IllegalArgumentException("sentence has " + sentenceWords.length + " words but "
+                    + sentenceTags.length + " tags");
+        }
+        int prev = CompiledModel.START;
+        for (int i = 0; i < sentenceTags.length; i++) {
+            int tag = internTag(sentenceTags[i]);
+            int word = internSurface(sentenceWords[i]);
+            transitions.get(prev).add(tag, 1);
+            observations.get(tag).add(word, 1);
+            dirtyTransitions.set(prev);
+            dirtyObservations.set(tag);
+            countWord(word, 1);
+            prev = tag;
+        }
+        sentences++;
+        tokens += sentenceTags.length;
+    }
+
+    /**
+     * Counts one tagged sentence given as ids from {@link #internWord(String)} and {@link #internTag(String)}.
+     *
+     * @param wordIds word ids of the sentence.
+     * @param tagIds  tag id of every word.
+     * @param length  number of words.
+     */
+    public void addSentence(int[] wordIds, int[] tagIds, int length) {
+        int prev = CompiledModel.START;
+        for (int i = 0; i < length; i++) {
+            transitions.get(prev).add(tagIds[i], 1);
+            observations.get(tagIds[i]).add(wordIds[i], 1);
+            dirtyTransitions.set(prev);
+            dirtyObservations.set(tagIds[i]);
+            countWord(wordIds[i], 1);
+            prev = tagIds[i];
+        }
+        sentences++;
+        tokens += length;
+    }
+
+    /**
+     * Adds every count of another table to this one.
+     *
+     * @param other counts to merge in; left unchanged.
+     */
+    public void merge(CorpusCounts other) {
+        // translate the other table's ids into ours.
+        int[] tagIds = new int[other.tags.size()];
+        for (int i = 0; i < tagIds.length; i++) {
+            tagIds[i] = internTag(other.tags.get(i));
+        }
+        int[] wordIds = new int[other.words.size()];
+        for (int i = 0; i < wordIds.length; i++) {
+            String surface = i < other.surfaces.length ? other.surfaces[i] : null;
+            wordIds[i] = surface != null ? internSurface(surface) : internWord(other.words.get(i));
+        }
+        merge(other, tagIds, wordIds);
+    }
+
+    /**
+     * Adds every count of another table to this one, given the ids its tags and words
+     * have here, e.g. when the other table's ids were never given names (see
+     * {@link #reserveTagRows(int)}).
+     *
+     * @param other  counts to merge in; left unchanged.
+     * @param tagIds other tag id -> tag id here, for every row of the other table.
+     * @param wordIds other word id -> word id here, for every word the other table counted.
+     */
+    void merge(CorpusCounts other, int[] tagIds, int[] wordIds) {
+        for (int from = 0; from < tagIds.length; from++) {
+            if (other.transitions.get(from).size() > 0) {
+                mergeRow(other.transitions.get(from), tagIds, transitions.get(tagIds[from]));
+                dirtyTransitions.set(tagIds[from]);
+            }
+            if (other.observations.get(from).size() > 0) {
+                mergeRow(other.observations.get(from), wordIds, observations.get(tagIds[from]));
+                dirtyObservations.set(tagIds[from]);
+            }
+        }
+        for (int word = 0; word < wordIds.length; word++) {
+            if (other.wordTotals[word] > 0) {
+                countWord(wordIds[word], other.wordTotals[word]);
+            }
+        }
+        sentences += other.sentences;
+        tokens += other.tokens;
+    }
+
+    /**
+     * Adds to the number of times a word was counted, marking it changed.
+     */
+    private void countWord(int word, long count) {
+        if (word >= wordTotals.length) {
+            wordTotals = Arrays.copyOf(wordTotals, Math.max(word + 1, wordTotals.length * 2));
+        }
+        long before = wordTotals[word];
+        wordTotals[word] = before + count;
+        if ((before == 1) != (before + count == 1)) {
+            singletonsChanged = true;
+        }
+        dirtyWords.set(word);
+    }
+
+    /**
+     * Adds one row of counts, translating its keys.
+     */
+    private static void mergeRow(CountTable source, int[] keyIds, CountTable target) {
+        for (int slot = 0; slot < source.capacity(); slot++) {
+            int key = source.keyAt(slot);
+            if (key >= 0) {
+                target.add(keyIds[key], source.countAt(slot));
+            }
+        }
+    }
+
+    /**
+     * @param tag tag.
+     * @return id of the tag, a new id if the tag was never seen.
+     */
+    public int internTag(String tag) {
+        int id = tags.add(tag);
+        if (id == transitions.size()) {
+            transitions.add(new CountTable());
+            observations.add(new CountTable());
+        }
+        return id;
+    }
+
+    /**
+     * Makes room for tag ids below numTags that have no name, for counts whose ids
+     * are resolved to names only when they are merged (see {@link #merge(CorpusCounts, int[], int[])}).
+     * Such counts can only be filled with {@link #addSentence(int[], int[], int)}.
+     *
+     * @param numTags number of tag ids, including # (start).
+     */
+    void reserveTagRows(int numTags) {
+        while (transitions.size() < numTags) {
+            transitions.add(new CountTable());
+            observations.add(new CountTable());
+        }
+    }
+
+    /**
+     * @param word word, already lower-cased.
+     * @return id of the word, a new id if the word was never seen.
+     */
+    public int internWord(String word) {
+        return words.add(word);
+    }
+
+    /**
+     * Interns a word as it appeared in the text, keeping the surface form if the
+     * lower-cased word is new.
+     *
+     * @param surface word as it appeared, e.g. capitalised.
+     * @return id of the lower-cased word, a new id if the word was never seen.
+     */
+    public int internSurface(String surface) {
+        String word = surface.toLowerCase();
+        int size = words.size();
+        int id = words.add(word);
+        if (id == size && !word.equals(surface)) {
+            if (id >= surfaces.length) {
+                surfaces = Arrays.copyOf(surfaces, Math.max(id + 1, surfaces.length * 2));
+            }
+            surfaces[id] = surface;
+        }
+        return id;
+    }
+
+    /**
+     * @param word word id.
+     * @return the word as it first appeared in the text, which for a word seen once is how it appeared.
+     */
+    public String getSurface(int word) {
+        return word < surfaces.length && surfaces[word] != null ? surfaces[word] : words.get(word);
+    }
+
+    /**
+     * @return tag ids, # (start) is 0.
+     */
+    public Vocabulary getTags() {
+        return tags;
+    }
+
+    /**
+     * @return word ids.
+     */
+    public Vocabulary getWords() {
+        return words;
+    }
+
+    /**
+     * @return number of sentences counted.
+     */
+    public long getSentences() {
+        return sentences;
+    }
+
+    /**
+     * @return number of words counted.
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @param tag tag id.
+     * @return counts of the tags following the tag.
+     */
+    CountTable transitionRow(int tag) {
+        return transitions.get(tag);
+    }
+
+    /**
+     * @param tag tag id.
+     * @return counts of the words the tag emits.
+     */
+    CountTable observationRow(int tag) {
+        return observations.get(tag);
+    }
+
+    /**
+     * @return tag ids whose transition row changed since the last {@link #markClean()}.
+     */
+    BitSet dirtyTransitionRows() {
+        return dirtyTransitions;
+    }
+
+    /**
+     * @return tag ids whose word row changed since the last {@link #markClean()}.
+     */
+    BitSet dirtyObservationRows() {
+        return dirtyObservations;
+    }
+
+    /**
+     * @return word ids counted since the last {@link #markClean()}.
+     */
+    BitSet dirtyWords() {
+        return dirtyWords;
+    }
+
+    /**
+     * @return whether a word became or stopped being seen exactly once since the last
+     *         {@link #markClean()}, which changes what {@link UnknownWords} learns from.
+     */
+    boolean singletonsChanged() {
+        return singletonsChanged;
+    }
+
+    /**
+     * Forgets which rows and words changed, after they have been normalised.
+     */
+    void markClean() {
+        dirtyTransitions.clear();
+        dirtyObservations.clear();
+        dirtyWords.clear();
+        singletonsChanged = false;
+    }
+
+    /**
+     * @return POS-word frequency map, ready for normalising.
+     */
+    public Map<String, Map<String, Double>> observationFrequencies() {
+        return toFrequencyMap(observations, words);
+    }
+
+    /**
+     * @return POS-POS frequency map including the # (start) row, ready for normalising.
+     */
+    public Map<String, Map<String, Double>> transitionFrequencies() {
+        return toFrequencyMap(transitions, tags);
+    }
+
+    /**
+     * Converts count rows into the map-of-maps layout used by the rest of the model.
+     */
+    private Map<String, Map<String, Double>> toFrequencyMap(List<CountTable> rows, Vocabulary keys) {
+        Map<String, Map<String, Double>> map = new HashMap<>();
+        for (int row = 0; row < rows.size(); row++) {
+            CountTable counts = rows.get(row);
+            if (counts.size() == 0) {
+                continue;
+            }
+            Map<String, Double> frequencyMap = new HashMap<>();
+            for (int slot = 0; slot < counts.capacity(); slot++) {
+                int key = counts.keyAt(slot);
+                if (key >= 0) {
+                    frequencyMap.put(keys.get(key), (double) counts.countAt(slot));
+                }
+            }
+            map.put(tags.get(row), frequencyMap);
+        }
+        return map;
+    }
+}
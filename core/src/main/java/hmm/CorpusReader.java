@@ -0,0 +1,381 @@
+package hmm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This program includes reading a pair of aligned training files -- one sentence
+ * per line and the part-of-speech tags of that sentence on the same line of the
+ * other file -- by memory-mapping both and tokenising the raw bytes. Lines end
+ * with \n (or \r\n), tokens are split on single spaces exactly as
+ * String.split(" ") splits them, and the files are read as UTF-8. A chunk counts
+ * its tokens by the ids of its own {@link TokenTable}s, without decoding them;
+ * merging the chunk resolves each distinct token against tables shared by the
+ * whole reader, so a String is only created the first time the reader meets a token.
+ *
+ * Files are mapped in windows of at most 1 GB, so they can be larger than the
+ * 2 GB one mapping holds. The files are handed out in chunks of lines that can
+ * be counted on separate threads. A different number of lines in the two files, or a different number
+ * of words and tags on a line, is reported with the file names and line number.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public final class CorpusReader {
+    static final int WINDOW_SHIFT = 30;  // files are mapped in windows of 2^30 bytes (1 GB).
+
+    private final String fileTags;
+    private final String fileSentences;
+    private final MappedFile tags;  // mapped tag file
+    private final MappedFile sentences;  // mapped sentence file
+    private long tagsPosition;  // start of the next unread tag line.
+    private long sentencesPosition;  // start of the next unread sentence line.
+    private int lineNumber;  // number of lines handed out so far.
+    private TokenTable wordTable = new TokenTable();  // every word token merged into mergedInto
+    private TokenTable tagTable = new TokenTable();  // every tag token merged into mergedInto
+    private int[] wordIds = new int[256];  // wordTable id -> word id in mergedInto
+    private int[] tagIds = new int[64];  // tagTable id -> tag id in mergedInto
+    private CorpusCounts mergedInto;  // counts the ids in wordIds and tagIds belong to
+
+    /**
+     * Constructor that memory-maps a pair of training files.
+     *
+     * @param fileTags      training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @throws IOException checks if the files exist and can be read.
+     */
+    public CorpusReader(String fileTags, String fileSentences) throws IOException {
+        this(fileTags, fileSentences, WINDOW_SHIFT);
+    }
+
+    /**
+     * Constructor that memory-maps a pair of training files in windows of a given size.
+     *
+     * @param fileTags      training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @param windowShift   files are mapped in windows of 2^windowShift bytes, at most 2^30.
+     * @throws IOException checks if the files exist and can be read.
+     */
+    CorpusReader(String fileTags, String fileSentences, int windowShift) throws IOException {
+        this.fileTags = fileTags;
+        this.fileSentences = fileSentences;
+        tags = new MappedFile(fileTags, windowShift);
+        sentences = new MappedFile(fileSentences, windowShift);
+    }
+
+    /**
+     * Hands out the next lines of both files.
+     *
+     * @param maxLines most lines in the chunk.
+     * @return next chunk, or null once both files are read.
+     * @throws IllegalArgumentException if one file has more lines than the other.
+     */
+    public Chunk nextChunk(int maxLines) {
+        int firstLine = lineNumber + 1;
+        long tagsStart = tagsPosition;
+        long sentencesStart = sentencesPosition;
+        int lines = 0;
+        while (lines < maxLines && tagsPosition < tags.size && sentencesPosition < sentences.size) {
+            tagsPosition = tags.nextLine(tagsPosition);
+            sentencesPosition = sentences.nextLine(sentencesPosition);
+            lines++;
+        }
+        lineNumber += lines;
+        if (lines < maxLines && (tagsPosition < tags.size || sentencesPosition < sentences.size)) {
+            throw new IllegalArgumentException(fileTags + " has " + (lineNumber + tags.countLines(tagsPosition))
+                    + " lines but " + fileSentences + " has " + (lineNumber + sentences.countLines(sentencesPosition))
+                    + " lines");
+        }
+        return lines == 0 ? null : new Chunk(firstLine, lines, tagsStart, sentencesStart);
+    }
+
+    /**
+     * This program includes one chunk of aligned lines, which can be counted on any thread.
+     */
+    public final class Chunk {
+        private final int firstLine;  // line number of the first line, for error messages.
+        private final int lines;  // number of lines.
+        private final long tagsStart;  // start of the first tag line.
+        private final long sentencesStart;  // start of the first sentence line.
+
+        private Chunk(int firstLine, int lines, long tagsStart, long sentencesStart) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.tagsStart = tagsStart;
+            this.sentencesStart = sentencesStart;
+        }
+
+        /**
+         * @return line number of the first line in the chunk, starting at 1.
+         */
+        public int getFirstLine() {
+            return firstLine;
+        }
+
+        /**
+         * @return number of lines in the chunk.
+         */
+        public int getLines() {
+            return lines;
+        }
+
+        /**
+         * Counts POS-word and POS-POS frequencies of every line in the chunk.
+         *
+         * @return counts of the chunk, to be merged with {@link Counts#mergeInto(CorpusCounts)}.
+         * @throws IllegalArgumentException if a line has a different number of words and tags.
+         */
+        public Counts count() {
+            CorpusCounts counts = new CorpusCounts();
+            Tokeniser tagTokens = new Tokeniser();
+            Tokeniser wordTokens = new Tokeniser();
+            // # (start) is tag 0 of every table, as it is of the counts.
+            byte[] start = CompiledModel.START_TAG.getBytes(StandardCharsets.UTF_8);
+            tagTokens.table.add(ByteBuffer.wrap(start), 0, start.length);
+            long tagsLine = tagsStart;
+            long sentencesLine = sentencesStart;
+            for (int line = 0; line < lines; line++) {
+                long tagsNext = tags.nextLine(tagsLine);
+                long sentencesNext = sentences.nextLine(sentencesLine);
+                int numTags = tagTokens.tokenise(tags, tagsLine, tagsNext);
+                int numWords = wordTokens.tokenise(sentences, sentencesLine, sentencesNext);
+                if (numTags != numWords) {
+                    throw new IllegalArgumentException("line " + (firstLine + line) + ": " + fileSentences + " has "
+                            + numWords + " words but " + fileTags + " has " + numTags + " tags");
+                }
+                counts.reserveTagRows(tagTokens.table.size());
+                counts.addSentence(wordTokens.ids, tagTokens.ids, numWords);
+                tagsLine = tagsNext;
+                sentencesLine = sentencesNext;
+            }
+            return new Counts(counts, wordTokens.table, tagTokens.table);
+        }
+    }
+
+    /**
+     * This program includes the counts of one chunk, keyed by the ids of the chunk's
+     * own token tables rather than by words and tags.
+     */
+    public final class Counts {
+        private final CorpusCounts counts;  // counts by chunk token ids; its vocabularies are empty
+        private final TokenTable words;  // word tokens of the chunk
+        private final TokenTable tags;  // tag tokens of the chunk, # (start) is 0
+
+        private Counts(CorpusCounts counts, TokenTable words, TokenTable tags) {
+            this.counts = counts;
+            this.words = words;
+            this.tags = tags;
+        }
+
+        /**
+         * Adds the counts of the chunk to a table. Each distinct token of the chunk is
+         * looked up by its bytes in the tables of the reader, and only a token the reader
+         * has never merged is decoded and interned by name.
+         *
+         * @param target counts to add to; chunks are usually all merged into the same one.
+         */
+        public void mergeInto(CorpusCounts target) {
+            synchronized (CorpusReader.this) {
+                if (mergedInto != target) {
+                    // ids resolved for another table mean nothing here.
+                    wordTable = new TokenTable();
+                    tagTable = new TokenTable();
+                    mergedInto = target;
+                }
+                int[] chunkWordIds = new int[words.size()];
+                for (int token = 0; token < chunkWordIds.length; token++) {
+                    int size = wordTable.size();
+                    int id = wordTable.add(words, token);
+                    if (id == size) {
+                        wordIds = grow(wordIds, id);
+                        wordIds[id] = target.internSurface(wordTable.get(id));
+                    }
+                    chunkWordIds[token] = wordIds[id];
+                }
+                int[] chunkTagIds = new int[tags.size()];
+                for (int token = 0; token < chunkTagIds.length; token++) {
+                    int size = tagTable.size();
+                    int id = tagTable.add(tags, token);
+                    if (id == size) {
+                        tagIds = grow(tagIds, id);
+                        tagIds[id] = target.internTag(tagTable.get(id));
+                    }
+                    chunkTagIds[token] = tagIds[id];
+                }
+                target.merge(counts, chunkTagIds, chunkWordIds);
+            }
+        }
+    }
+
+    /**
+     * @return ids, or a longer copy of it if index is past its end.
+     */
+    private static int[] grow(int[] ids, int index) {
+        return index < ids.length ? ids : Arrays.copyOf(ids, Math.max(index + 1, ids.length * 2));
+    }
+
+    /**
+     * This program includes a file mapped read-only in windows of 2^shift bytes, so
+     * files over the 2 GB a single mapping can hold are read too. Positions are
+     * longs into the whole file; a line may start in one window and end in the next.
+     * The mappings stay valid after the channel is closed.
+     */
+    private static final class MappedFile {
+        private final ByteBuffer[] windows;  // window i holds the bytes from i << shift
+        private final int shift;  // log2 of the window size.
+        private final long size;  // bytes in the file.
+
+        MappedFile(String file, int shift) throws IOException {
+            if (shift < 1 || shift > WINDOW_SHIFT) {
+                throw new IllegalArgumentException("window shift " + shift + " is not between 1 and " + WINDOW_SHIFT);
+            }
+            this.shift = shift;
+            try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                size = channel.size();
+                windows = new ByteBuffer[(int) ((size + (1L << shift) - 1) >>> shift)];
+                for (int i = 0; i < windows.length; i++) {
+                    long start = (long) i << shift;
+                    windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << shift, size - start));
+                }
+            }
+        }
+
+        /**
+         * @return window holding the byte at position.
+         */
+        ByteBuffer window(long position) {
+            return windows[(int) (position >>> shift)];
+        }
+
+        /**
+         * @return index of the byte at position within its window.
+         */
+        int offset(long position) {
+            return (int) (position & ((1L << shift) - 1));
+        }
+
+        /**
+         * @return byte at position.
+         */
+        byte get(long position) {
+            return window(position).get(offset(position));
+        }
+
+        /**
+         * @return start of the line after the one starting at position.
+         */
+        long nextLine(long position) {
+            while (position < size) {
+                ByteBuffer window = window(position);
+                int limit = window.limit();
+                for (int i = offset(position); i < limit; i++) {
+                    if (window.get(i) == '\n') {
+                        return position - offset(position) + i + 1;
+                    }
+                }
+                position += limit - offset(position);  // the line goes on in the next window.
+            }
+            return size;
+        }
+
+        /**
+         * @return number of lines from position to the end of the file.
+         */
+        int countLines(long position) {
+            int lines = 0;
+            while (position < size) {
+                position = nextLine(position);
+                lines++;
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * This program includes splitting lines of one file into tokens and interning
+     * them by their bytes in a {@link TokenTable}, so no token is decoded.
+     */
+    private static final class Tokeniser {
+        final TokenTable table = new TokenTable();  // tokens of the chunk
+        private ByteBuffer spanning = ByteBuffer.allocate(256);  // copy of a line that crosses two windows
+        int[] ids = new int[64];  // token ids of the tokens on the last line
+
+        /**
+         * Splits file[start, end) on single spaces into {@link #ids}.
+         *
+         * @return number of tokens.
+         */
+        int tokenise(MappedFile file, long start, long end) {
+            // drops the line terminator.
+            if (end > start && file.get(end - 1) == '\n') {
+                end--;
+            }
+            if (end > start && file.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end == start || file.window(start) == file.window(end - 1)) {
+                return tokenise(file.window(start), file.offset(start), file.offset(start) + (int) (end - start));
+            }
+            // a line crossing into the next window is copied, so every token is in one buffer.
+            if (spanning.capacity() < end - start) {
+                spanning = ByteBuffer.allocate((int) Math.max(end - start, 2L * spanning.capacity()));
+            }
+            for (long position = start; position < end; position++) {
+                spanning.put((int) (position - start), file.get(position));
+            }
+            return tokenise(spanning, 0, (int) (end - start));
+        }
+
+        /**
+         * Splits buffer[start, end), a line without its terminator, into {@link #ids} the
+         * way line.split(" ") splits it, so training sees the same tokens as the decoding
+         * paths: every single space separates two tokens, so consecutive spaces give
+         * empty tokens, trailing empty tokens are dropped, and an empty line is one
+         * empty token.
+         *
+         * @return number of tokens.
+         */
+        private int tokenise(ByteBuffer buffer, int start, int end) {
+            int numTokens = 0;
+            int emptyTokens = 0;  // empty tokens since the last word, kept only if a word follows.
+            int tokenStart = start;
+            for (int position = start; position < end; position++) {
+                if (buffer.get(position) == ' ') {
+                    if (position == tokenStart) {
+                        emptyTokens++;
+                    }
+                    else {
+                        numTokens = addToken(numTokens, emptyTokens, buffer, tokenStart, position);
+                        emptyTokens = 0;
+                    }
+                    tokenStart = position + 1;
+                }
+            }
+            if (end > tokenStart || end == start) {
+                numTokens = addToken(numTokens, emptyTokens, buffer, tokenStart, end);
+            }
+            return numTokens;
+        }
+
+        /**
+         * Adds the pending empty tokens, then the token in buffer[start, end), to {@link #ids}.
+         *
+         * @return number of tokens after adding them.
+         */
+        private int addToken(int numTokens, int emptyTokens, ByteBuffer buffer, int start, int end) {
+            if (numTokens + emptyTokens + 1 > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(numTokens + emptyTokens + 1, ids.length * 2));
+            }
+            for (int i = 0; i < emptyTokens; i++) {
+                ids[numTokens++] = table.add(buffer, start, start);
+            }
+            ids[numTokens++] = table.add(buffer, start, end);
+            return numTokens;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package hmm;
+
+import java.util.Arrays;
+
+/**
+ * This program includes an open-addressing table of int keys to long counts.
+ * It is one row of a count table (a tag's successors or a tag's words) and
+ * keeps the row total as counts are added, so normalising a row is a single pass.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class CountTable {
+    private static final int EMPTY = -1;  // marks an unused slot.
+
+    private int[] keys;
+    private long[] counts;
+    private int size;  // number of distinct keys.
+    private long total;  // sum of all counts.
+
+    CountTable() {
+        keys = new int[8];
+        counts = new long[8];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds to the count of a key.
+     *
+     * @param key   non-negative key.
+     * @param count amount to add.
+     */
+    void add(int key, long count) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            // keep the table at most half full.
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = slotOf(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        counts[slot] += count;
+        total += count;
+    }
+
+    /**
+     * @param key key.
+     * @return count of the key, 0 if it was never added.
+     */
+    long get(int key) {
+        int slot = slotOf(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    /**
+     * @return number of distinct keys.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return sum of all counts.
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @return number of slots; iterate 0..capacity() with keyAt/countAt.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param slot slot index.
+     * @return key stored in the slot, or -1 if the slot is unused.
+     */
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @param slot slot index.
+     * @return count stored in the slot.
+     */
+    long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot it would go into.
+     */
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts every key.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        total = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                add(oldKeys[slot], oldCounts[slot]);
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package hmm;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * This program includes a reusable decoder that works on whole score vectors of
+ * a compiled Hidden Markov Model instead of one (state, successor) pair at a time.
+ * Viterbi is a max-plus product of the score vector with the transition matrix,
+ * one row per live state; it returns exactly the tags {@link ViterbiDecoder}
+ * returns without pruning. Forward-backward gives the probability of every tag
+ * at every word given the whole sentence (its posterior marginal), which is the
+ * confidence of a tag.
+ *
+ * Forward-backward would need a log-sum-exp over every (state, successor) pair.
+ * Instead it keeps probabilities scaled to sum to 1 at every word, with each
+ * word's emission probabilities taken relative to the best emission score the
+ * word can be reached with, so the sums are plain multiply-adds over rows of the
+ * exponentiated transition matrix and only one exp is taken per tag per word.
+ * The vector steps run on {@link ScoreKernels}. A decoder is not thread-safe;
+ * keep one per thread.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class DenseDecoder {
+    private static final ScoreKernels KERNELS = ScoreKernels.INSTANCE;
+
+    private double[] emissions = new double[0];  // words x tags, emission log-probabilities.
+    private double[] scores = new double[0];  // words x tags, best path score ending in each tag.
+    private double[] forward = new double[0];  // words x tags, forward probabilities scaled to sum to 1.
+    private double[] backward = new double[0];  // words x tags, backward probabilities, same scale as forward.
+    private double[] weights = new double[0];  // words x tags, exp(emission - shift), 0 for unreachable tags.
+    private double[] scales = new double[0];  // per word, sum of the forward probabilities before scaling.
+    private double[] row = new double[0];  // one vector of tags being summed.
+    private double[] scratch = new double[0];  // emission scores of one word.
+    private int[] tagIds = new int[0];  // tag ids of the sentence being tagged.
+    private final UnknownWordCache unknownWords = new UnknownWordCache();  // scores of recently seen unknown words.
+    private long statesExpanded;  // states whose successors were scored, for the metrics.
+
+    /**
+     * @return name of the kernels this JVM decodes with, "scalar" or the Vector API width.
+     */
+    public static String kernels() {
+        return KERNELS.name();
+    }
+
+    /**
+     * Tags a sentence with the Viterbi path, writing the tags into a caller-supplied buffer.
+     *
+     * @param model   compiled model to decode with.
+     * @param words   array of words.
+     * @param tagsOut receives one tag per word; must be at least words.length long.
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    public void tag(CompiledModel model, String[] words, String[] tagsOut) {
+        if (words.length == 0) {
+            return;
+        }
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        long expandedBefore = statesExpanded;
+        int unknown = lookupEmissions(model, words);
+        viterbi(model, words.length, tagIds);
+        for (int i = 0; i < words.length; i++) {
+            tagsOut[i] = model.tag(tagIds[i]);
+        }
+        // compiled away unless metrics are switched on.
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().sentenceDecoded(words.length, unknown, statesExpanded - expandedBefore,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Tags a sentence with the Viterbi path, writing tag ids into a caller-supplied buffer.
+     *
+     * @param model     compiled model to decode with.
+     * @param words     array of words.
+     * @param tagIdsOut receives one tag id per word; must be at least words.length long.
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    public void tag(CompiledModel model, String[] words, int[] tagIdsOut) {
+        if (words.length == 0) {
+            return;
+        }
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        long expandedBefore = statesExpanded;
+        int unknown = lookupEmissions(model, words);
+        viterbi(model, words.length, tagIdsOut);
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().sentenceDecoded(words.length, unknown, statesExpanded - expandedBefore,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Tags a sentence with the Viterbi path and gives the posterior probability of
+     * every tag on it, i.e. how sure the model is of each tag given the whole sentence.
+     * The words are looked up once for both.
+     *
+     * @param model         compiled model to decode with.
+     * @param words         array of words.
+     * @param tagIdsOut     receives one tag id per word; must be at least words.length long.
+     * @param confidenceOut receives the posterior of each tag, between 0 and 1; must be at least words.length long.
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    public void tag(CompiledModel model, String[] words, int[] tagIdsOut, double[] confidenceOut) {
+        if (words.length == 0) {
+            return;
+        }
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        long expandedBefore = statesExpanded;
+        int numTags = model.numTags();
+        int unknown = lookupEmissions(model, words);
+        viterbi(model, words.length, tagIdsOut);
+        forwardBackward(model, words.length);
+        for (int i = 0; i < words.length; i++) {
+            int cell = i * numTags + tagIdsOut[i];
+            confidenceOut[i] = forward[cell] * backward[cell];
+        }
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().sentenceDecoded(words.length, unknown, statesExpanded - expandedBefore,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Computes the posterior marginal of every tag at every word by forward-backward.
+     *
+     * @param model compiled model to decode with.
+     * @param words array of words.
+     * @return [word][tag id] -> probability of the tag at the word given the sentence;
+     *         every row sums to 1 (up to rounding).
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    public double[][] posteriors(CompiledModel model, String[] words) {
+        int numTags = model.numTags();
+        double[][] posteriors = new double[words.length][numTags];
+        if (words.length == 0) {
+            return posteriors;
+        }
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        long expandedBefore = statesExpanded;
+        int unknown = lookupEmissions(model, words);
+        forwardBackward(model, words.length);
+        for (int i = 0; i < words.length; i++) {
+            for (int tag = 0; tag < numTags; tag++) {
+                posteriors[i][tag] = forward[i * numTags + tag] * backward[i * numTags + tag];
+            }
+        }
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().sentenceDecoded(words.length, unknown, statesExpanded - expandedBefore,
+                    System.nanoTime() - startNanos);
+        }
+        return posteriors;
+    }
+
+    /**
+     * Runs forward-backward on a sentence and keeps the passes for the caller to
+     * read, e.g. to collect expected counts.
+     *
+     * @param model compiled model.
+     * @param words array of words, at least one.
+     * @return log-probability of the sentence under the model.
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    double forwardBackward(CompiledModel model, String[] words) {
+        lookupEmissions(model, words);
+        return forwardBackward(model, words.length);
+    }
+
+    /**
+     * @return words x tags forward probabilities of the last forward-backward, scaled to sum to 1 per word.
+     */
+    double[] forward() {
+        return forward;
+    }
+
+    /**
+     * @return words x tags backward probabilities of the last forward-backward; forward * backward is the posterior.
+     */
+    double[] backward() {
+        return backward;
+    }
+
+    /**
+     * @return words x tags emission probabilities of the last forward-backward, relative to each word's best one.
+     */
+    double[] weights() {
+        return weights;
+    }
+
+    /**
+     * @return per word, the sum the forward probabilities were divided by in the last forward-backward.
+     */
+    double[] scales() {
+        return scales;
+    }
+
+    /**
+     * Fills in the emission scores of every tag for every word of a sentence.
+     *
+     * @param model compiled model.
+     * @param words array of words.
+     * @return number of words never seen in training.
+     */
+    private int lookupEmissions(CompiledModel model, String[] words) {
+        int numTags = model.numTags();
+        ensureCapacity(words.length, numTags);
+        int unknown = 0;
+        for (int i = 0; i < words.length; i++) {
+            int word = model.wordId(words[i]);
+            double[] wordEmissions = scratch;
+            if (model.isUnknown(word)) {
+                wordEmissions = unknownWords.emissions(model.getUnknownWords(), words[i]);
+                unknown++;
+            }
+            else {
+                model.emissions(word, wordEmissions);
+            }
+            System.arraycopy(wordEmissions, 0, emissions, i * numTags, numTags);
+        }
+        return unknown;
+    }
+
+    /**
+     * Finds the best path through the emission scores looked up for a sentence.
+     *
+     * @param model     compiled model.
+     * @param length    number of words.
+     * @param tagIdsOut receives one tag id per word.
+     */
+    private void viterbi(CompiledModel model, int length, int[] tagIdsOut) {
+        int numTags = model.numTags();
+        double[] transitions = model.transitions();
+
+        // the first word is only reached from the start state.
+        for (int tag = 0; tag < numTags; tag++) {
+            scores[tag] = transitions[CompiledModel.START * numTags + tag] + emissions[tag];
+        }
+        statesExpanded++;
+        // every other word: max over live states of (score + transition), then the emission.
+        for (int i = 1; i < length; i++) {
+            int previous = (i - 1) * numTags;
+            int current = i * numTags;
+            Arrays.fill(scores, current, current + numTags, Double.NEGATIVE_INFINITY);
+            for (int state = 0; state < numTags; state++) {
+                double score = scores[previous + state];
+                if (score != Double.NEGATIVE_INFINITY) {
+                    KERNELS.maxPlus(score, transitions, state * numTags, scores, current, numTags);
+                    statesExpanded++;
+                }
+            }
+            for (int tag = 0; tag < numTags; tag++) {
+                scores[current + tag] += emissions[current + tag];
+            }
+        }
+
+        // finds the state with the highest score at the last word, the lowest id on a tie.
+        int last = (length - 1) * numTags;
+        int best = -1;
+        for (int tag = 0; tag < numTags; tag++) {
+            double score = scores[last + tag];
+            if (score != Double.NEGATIVE_INFINITY && (best == -1 || score > scores[last + best])) {
+                best = tag;
+            }
+        }
+        if (best == -1) {
+            throw new NoSuchElementException("no tag sequence reaches the end of the sentence");
+        }
+
+        // backtraces without back-pointers: the previous state is the first one whose
+        // score, transition and emission add up to the score of the current state.
+        for (int i = length - 1; i > 0; i--) {
+            tagIdsOut[i] = best;
+            best = previousState(transitions, numTags, i, best);
+        }
+        tagIdsOut[0] = best;
+    }
+
+    /**
+     * @return the lowest-numbered state at word i - 1 that the best path to tag at word i comes from.
+     */
+    private int previousState(double[] transitions, int numTags, int i, int tag) {
+        int previous = (i - 1) * numTags;
+        double target = scores[i * numTags + tag];
+        double emission = emissions[i * numTags + tag];
+        for (int state = 0; state < numTags; state++) {
+            double score = scores[previous + state];
+            double transition = transitions[state * numTags + tag];
+            // the same sum, in the same order, as the forward pass maximised over.
+            if (score != Double.NEGATIVE_INFINITY && transition != Double.NEGATIVE_INFINITY
+                    && score + transition + emission == target) {
+                return state;
+            }
+        }
+        throw new IllegalStateException("no state leads to tag " + tag + " at word " + i);
+    }
+
+    /**
+     * Runs the scaled forward and backward passes over the emission scores looked up
+     * for a sentence. Afterwards forward[i][tag] * backward[i][tag] is the posterior
+     * of the tag at word i.
+     *
+     * @param model  compiled model.
+     * @param length number of words.
+     * @return log-probability of the sentence under the model.
+     * @throws NoSuchElementException if no tag sequence reaches the end of the sentence.
+     */
+    double forwardBackward(CompiledModel model, int length) {
+        int numTags = model.numTags();
+        double[] probabilities = model.transitionProbabilities();
+        double logProbability = 0;
+
+        // forward: predicts each word's tags from the previous word's, then weighs them by the emissions.
+        for (int i = 0; i < length; i++) {
+            int current = i * numTags;
+            if (i == 0) {
+                System.arraycopy(probabilities, CompiledModel.START * numTags, row, 0, numTags);
+                statesExpanded++;
+            }
+            else {
+                Arrays.fill(row, 0, numTags, 0.0);
+                int previous = (i - 1) * numTags;
+                for (int state = 0; state < numTags; state++) {
+                    double probability = forward[previous + state];
+                    if (probability != 0) {
+                        KERNELS.multiplyAdd(probability, probabilities, state * numTags, row, numTags);
+                        statesExpanded++;
+                    }
+                }
+            }
+            // the best emission score among the reachable tags becomes 1, so a word
+            // every tag scores by the penalty does not underflow to 0.
+            double shift = Double.NEGATIVE_INFINITY;
+            for (int tag = 0; tag < numTags; tag++) {
+                if (row[tag] > 0) {
+                    shift = Math.max(shift, emissions[current + tag]);
+                }
+            }
+            if (shift == Double.NEGATIVE_INFINITY) {
+                throw new NoSuchElementException("no tag sequence reaches word " + i + " of the sentence");
+            }
+            double scale = 0;
+            for (int tag = 0; tag < numTags; tag++) {
+                double weight = row[tag] > 0 ? Math.exp(emissions[current + tag] - shift) : 0;
+                weights[current + tag] = weight;
+                forward[current + tag] = row[tag] * weight;
+                scale += forward[current + tag];
+            }
+            double inverse = 1 / scale;
+            for (int tag = 0; tag < numTags; tag++) {
+                forward[current + tag] *= inverse;
+            }
+            scales[i] = scale;
+            logProbability += Math.log(scale) + shift;
+        }
+
+        // backward: sums each state's successors, scaled by the next word's forward scale.
+        int last = (length - 1) * numTags;
+        Arrays.fill(backward, last, last + numTags, 1.0);
+        for (int i = length - 2; i >= 0; i--) {
+            int current = i * numTags;
+            int next = current + numTags;
+            for (int tag = 0; tag < numTags; tag++) {
+                row[tag] = weights[next + tag] * backward[next + tag];
+            }
+            double inverse = 1 / scales[i + 1];
+            for (int state = 0; state < numTags; state++) {
+                // a state no path reaches has posterior 0 whatever follows it.
+                backward[current + state] = forward[current + state] == 0 ? 0
+                        : KERNELS.dot(probabilities, state * numTags, row, numTags) * inverse;
+            }
+        }
+        return logProbability;
+    }
+
+    /**
+     * Grows the per-word buffers so a sentence of the given length over the given number of tags fits.
+     *
+     * @param length  number of words.
+     * @param numTags number of tags.
+     */
+    private void ensureCapacity(int length, int numTags) {
+        if (row.length < numTags) {
+            row = new double[numTags];
+            scratch = new double[numTags];
+        }
+        if (scales.length < length) {
+            int capacity = Math.max(length, scales.length * 2);
+            scales = new double[capacity];
+            tagIds = new int[capacity];
+        }
+        if (emissions.length < length * numTags) {
+            int capacity = Math.max(length * numTags, emissions.length * 2);
+            emissions = new double[capacity];
+            scores = new double[capacity];
+            forward = new double[capacity];
+            backward = new double[capacity];
+            weights = new double[capacity];
+        }
+    }
+}
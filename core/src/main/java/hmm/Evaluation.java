@@ -0,0 +1,272 @@
+package hmm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This program includes the scores of tagging a test corpus: how many words were
+ * tagged correctly, a confusion matrix of gold tag against predicted tag, and the
+ * speed of tagging (words per second and per-sentence latency percentiles).
+ *
+ * An evaluation of part of the corpus can be merged into another, so chunks of a
+ * corpus can be scored on separate threads. Gold tags the model never saw in
+ * training are counted under {@link #UNSEEN}, and words the tagger returned no
+ * tag for (a tag sequence shorter than the gold one) under {@link #NONE}.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class Evaluation {
+    public static final String UNSEEN = "<unseen>";  // gold tag the model does not know.
+    public static final String NONE = "<none>";  // no predicted tag for the word.
+
+    private final CompiledModel compiledModel;
+    private final int unseen;  // row of gold tags the model does not know
+    private final int none;  // column of missing predictions
+    private final long[][] confusion;  // gold tag -> predicted tag -> count
+    private final LatencyHistogram latency;  // per-sentence tagging time, shared by every part
+    private long sentences;
+    private long misaligned;  // sentences whose words, gold tags and predicted tags differ in number
+    private long correct;
+    private long incorrect;
+    private long elapsedNanos;  // wall time of the whole evaluation
+
+    /**
+     * Constructor that creates an empty evaluation.
+     *
+     * @param compiledModel model whose tags are scored.
+     * @param latency       histogram the per-sentence tagging times are recorded into.
+     */
+    Evaluation(CompiledModel compiledModel, LatencyHistogram latency) {
+        this.compiledModel = compiledModel;
+        this.unseen = compiledModel.numTags();
+        this.none = compiledModel.numTags() + 1;
+        this.confusion = new long[compiledModel.numTags() + 2][compiledModel.numTags() + 2];
+        this.latency = latency;
+    }
+
+    /**
+     * Scores one tagged sentence. Every gold tag without a predicted tag, and every
+     * predicted tag beyond the gold ones, counts as incorrect.
+     *
+     * @param numWords  number of words in the sentence.
+     * @param goldTags  correct tags.
+     * @param predicted tags returned by the tagger.
+     * @param nanos     time taken to tag the sentence.
+     */
+    void score(int numWords, String[] goldTags, String[] predicted, long nanos) {
+        sentences++;
+        latency.record(nanos);
+        if (numWords != goldTags.length || predicted.length != goldTags.length) {
+            misaligned++;
+        }
+        for (int i = 0; i < goldTags.length; i++) {
+            int gold = compiledModel.tagId(goldTags[i]);
+            int guess = i < predicted.length ? compiledModel.tagId(predicted[i]) : none;
+            confusion[gold < 0 ? unseen : gold][guess < 0 ? none : guess]++;
+            if (i < predicted.length && goldTags[i].equals(predicted[i])) {
+                correct++;
+            } else {
+                incorrect++;
+            }
+        }
+        if (predicted.length > goldTags.length) {
+            incorrect += predicted.length - goldTags.length;
+        }
+    }
+
+    /**
+     * Adds the scores of another part of the corpus to this one.
+     *
+     * @param other evaluation of the same model; left unchanged.
+     */
+    void merge(Evaluation other) {
+        for (int gold = 0; gold < confusion.length; gold++) {
+            for (int guess = 0; guess < confusion.length; guess++) {
+                confusion[gold][guess] += other.confusion[gold][guess];
+            }
+        }
+        sentences += other.sentences;
+        misaligned += other.misaligned;
+        correct += other.correct;
+        incorrect += other.incorrect;
+    }
+
+    /**
+     * @param elapsedNanos wall time of the whole evaluation.
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return words tagged correctly.
+     */
+    public long getCorrect() {
+        return correct;
+    }
+
+    /**
+     * @return words tagged incorrectly or not at all.
+     */
+    public long getIncorrect() {
+        return incorrect;
+    }
+
+    /**
+     * @return correct / (correct + incorrect), 0 for an empty corpus.
+     */
+    public double getAccuracy() {
+        long total = correct + incorrect;
+        return total == 0 ? 0 : (double) correct / total;
+    }
+
+    /**
+     * @return sentences scored.
+     */
+    public long getSentences() {
+        return sentences;
+    }
+
+    /**
+     * @return sentences whose words, gold tags and predicted tags were not all the same in number.
+     */
+    public long getMisaligned() {
+        return misaligned;
+    }
+
+    /**
+     * @return words tagged per second of wall time.
+     */
+    public double getTokensPerSecond() {
+        return elapsedNanos == 0 ? 0 : (correct + incorrect) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return per-sentence tagging time.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return labels of the rows and columns of {@link #getConfusionMatrix()}: the
+     *         tags of the model, then {@link #UNSEEN} and {@link #NONE}.
+     */
+    public List<String> getConfusionLabels() {
+        List<String> labels = new ArrayList<>();
+        for (int tag = 0; tag < compiledModel.numTags(); tag++) {
+            labels.add(compiledModel.tag(tag));
+        }
+        labels.add(UNSEEN);
+        labels.add(NONE);
+        return labels;
+    }
+
+    /**
+     * @return copy of the confusion matrix: [gold tag][predicted tag] -> number of words.
+     */
+    public long[][] getConfusionMatrix() {
+        long[][] copy = new long[confusion.length][];
+        for (int gold = 0; gold < confusion.length; gold++) {
+            copy[gold] = confusion[gold].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the confusion matrix as tab-separated values, gold tags down the side
+     * and predicted tags across the top, leaving out tags that never occur.
+     *
+     * @param out where to write.
+     * @throws IOException if out cannot be written.
+     */
+    public void writeConfusionMatrix(Appendable out) throws IOException {
+        List<String> labels = getConfusionLabels();
+        boolean[] used = new boolean[confusion.length];
+        for (int gold = 0; gold < confusion.length; gold++) {
+            for (int guess = 0; guess < confusion.length; guess++) {
+                if (confusion[gold][guess] != 0) {
+                    used[gold] = true;
+                    used[guess] = true;
+                }
+            }
+        }
+        out.append("gold\\predicted");
+        for (int guess = 0; guess < confusion.length; guess++) {
+            if (used[guess]) {
+                out.append('\t').append(labels.get(guess));
+            }
+        }
+        out.append('\n');
+        for (int gold = 0; gold < confusion.length; gold++) {
+            if (!used[gold]) {
+                continue;
+            }
+            out.append(labels.get(gold));
+            for (int guess = 0; guess < confusion.length; guess++) {
+                if (used[guess]) {
+                    out.append('\t').append(Long.toString(confusion[gold][guess]));
+                }
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes one line per gold tag: how often it occurs, how often it was tagged
+     * correctly, and the tags it was most often mistaken for.
+     *
+     * @param out          where to write.
+     * @param maxConfusions most mistaken-for tags listed per gold tag.
+     * @throws IOException if out cannot be written.
+     */
+    public void writePerTag(Appendable out, int maxConfusions) throws IOException {
+        List<String> labels = getConfusionLabels();
+        for (int gold = 0; gold < confusion.length; gold++) {
+            long total = 0;
+            for (long count : confusion[gold]) {
+                total += count;
+            }
+            if (total == 0) {
+                continue;
+            }
+            long right = gold < unseen ? confusion[gold][gold] : 0;
+            out.append(String.format("%-10s %8d words %7.2f%% correct", labels.get(gold), total, 100.0 * right / total));
+            // lists the largest off-diagonal counts of the row.
+            boolean[] listed = new boolean[confusion.length];
+            for (int n = 0; n < maxConfusions; n++) {
+                int worst = -1;
+                for (int guess = 0; guess < confusion.length; guess++) {
+                    if (guess != gold && !listed[guess] && confusion[gold][guess] > 0
+                            && (worst < 0 || confusion[gold][guess] > confusion[gold][worst])) {
+                        worst = guess;
+                    }
+                }
+                if (worst < 0) {
+                    break;
+                }
+                listed[worst] = true;
+                out.append(n == 0 ? ", mistaken for " : ", ").append(labels.get(worst))
+                        .append(" ").append(Long.toString(confusion[gold][worst]));
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * @return summary of accuracy and speed.
+     */
+    @Override
+    public String toString() {
+        return "Sentences " + sentences + " (" + misaligned + " misaligned)\n"
+                + "Correct " + correct + "\n"
+                + "Incorrect " + incorrect + "\n"
+                + String.format("Accuracy %.4f%%%n", 100 * getAccuracy())
+                + String.format("Tokens/sec %.0f%n", getTokensPerSecond())
+                + "Sentence latency p50 " + latency.getPercentile(50) / 1000 + " us, p99 "
+                + latency.getPercentile(99) / 1000 + " us";
+    }
+}
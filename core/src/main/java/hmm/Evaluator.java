@@ -0,0 +1,153 @@
+package hmm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This program includes evaluating a trained Hidden Markov Model on a test corpus
+ * of any size. The test sentence and tag files are streamed together in chunks of
+ * lines; every chunk is tagged and scored on an executor into its own
+ * {@link Evaluation}, and the partial evaluations are merged as they finish, so
+ * only a bounded number of chunks is held in memory at once.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class Evaluator {
+    private static final int CHUNK_LINES = 256;  // sentences scored by one task.
+
+    private final HiddenMarkovModel model;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor that evaluates on the common ForkJoinPool.
+     *
+     * @param model trained model.
+     */
+    public Evaluator(HiddenMarkovModel model) {
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that evaluates on the given executor. The executor is not shut down by this class.
+     *
+     * @param model    trained model.
+     * @param executor executor the chunks are scored on.
+     */
+    public Evaluator(HiddenMarkovModel model, ExecutorService executor) {
+        this.model = model;
+        this.executor = executor;
+    }
+
+    /**
+     * Tags every test sentence and scores the tags against the test tags.
+     *
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags      text file with the correct tags of the test sentences.
+     * @return scores and speed of the whole corpus.
+     * @throws IOException checks that files exist and can be read.
+     * @throws IllegalArgumentException if the files have different numbers of lines.
+     */
+    public Evaluation evaluate(String fileTestSentences, String fileTestTags) throws IOException {
+        CompiledModel compiledModel = model.getCompiledModel();
+        LatencyHistogram latency = new LatencyHistogram();
+        Evaluation total = new Evaluation(compiledModel, latency);
+        Deque<Future<Evaluation>> inFlight = new ArrayDeque<>();
+        int maxInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+
+        try (BufferedReader inputTestSentences = Files.newBufferedReader(Paths.get(fileTestSentences), StandardCharsets.UTF_8);
+             BufferedReader inputTestTags = Files.newBufferedReader(Paths.get(fileTestTags), StandardCharsets.UTF_8)) {
+            List<String> chunkSentences = new ArrayList<>(CHUNK_LINES);
+            List<String> chunkTags = new ArrayList<>(CHUNK_LINES);
+            int lineNumber = 0;
+            while (true) {
+                String lineTestSentences = inputTestSentences.readLine();
+                String lineTestTags = inputTestTags.readLine();
+                if (lineTestSentences != null && lineTestTags != null) {
+                    lineNumber++;
+                    chunkSentences.add(lineTestSentences);
+                    chunkTags.add(lineTestTags);
+                } else if (lineTestSentences != null || lineTestTags != null) {
+                    throw new IllegalArgumentException((lineTestSentences == null ? fileTestSentences : fileTestTags)
+                            + " ends after line " + lineNumber + " but "
+                            + (lineTestSentences == null ? fileTestTags : fileTestSentences) + " goes on");
+                }
+                boolean end = lineTestSentences == null;
+                // hands a full (or the last) chunk to the executor.
+                if (chunkSentences.size() == CHUNK_LINES || (end && !chunkSentences.isEmpty())) {
+                    List<String> sentences = chunkSentences;
+                    List<String> tags = chunkTags;
+                    inFlight.add(executor.submit(() -> scoreChunk(compiledModel, latency, sentences, tags)));
+                    chunkSentences = new ArrayList<>(CHUNK_LINES);
+                    chunkTags = new ArrayList<>(CHUNK_LINES);
+                }
+                // merges finished chunks so memory stays bounded.
+                while (inFlight.size() >= maxInFlight || (end && !inFlight.isEmpty())) {
+                    total.merge(Tasks.await(inFlight.poll()));
+                }
+                if (end) {
+                    break;
+                }
+            }
+        } finally {
+            // a failure leaves no chunks running in the background.
+            for (Future<Evaluation> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        total.setElapsedNanos(System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * Tags and scores one chunk of test sentences with this thread's decoder.
+     *
+     * @param compiledModel model snapshot every chunk is tagged with.
+     * @param latency       histogram of per-sentence tagging times.
+     * @param sentences     test sentences, one per line.
+     * @param tags          correct tags, one line per sentence.
+     * @return scores of the chunk.
+     */
+    private Evaluation scoreChunk(CompiledModel compiledModel, LatencyHistogram latency,
+                                  List<String> sentences, List<String> tags) {
+        Evaluation evaluation = new Evaluation(compiledModel, latency);
+        ViterbiDecoder decoder = model.decoder();
+        for (int i = 0; i < sentences.size(); i++) {
+            String[] listOfWords = sentences.get(i).split(" ");
+            String[] listOfTags = tags.get(i).split(" ");
+            String[] ViterbiTags = new String[listOfWords.length];
+            long start = System.nanoTime();
+            decoder.tag(compiledModel, listOfWords, ViterbiTags);
+            evaluation.score(listOfWords.length, listOfTags, ViterbiTags, System.nanoTime() - start);
+        }
+        return evaluation;
+    }
+
+    /**
+     * Evaluates a model on a test corpus and prints the scores, speed and per-tag confusions.
+     * Usage: Evaluator model-file test-sentences test-tags, or
+     * Evaluator train-tags train-sentences test-sentences test-tags.
+     *
+     * @param args a model file saved with {@link HiddenMarkovModel#save(String)} or a pair
+     *             of training files, then the test sentence and tag files.
+     * @throws IOException checks that the files exist.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("usage: Evaluator <model file> <test sentences> <test tags>"
+                    + " | <train tags> <train sentences> <test sentences> <test tags>");
+            System.exit(2);
+        }
+        HiddenMarkovModel model = args.length == 3 ? HiddenMarkovModel.load(args[0])
+                : new HiddenMarkovModel(args[0], args[1]);
+        Evaluation evaluation = new Evaluator(model).evaluate(args[args.length - 2], args[args.length - 1]);
+        System.out.println(evaluation);
+        evaluation.writePerTag(System.out, 3);
+    }
+}
@@ -0,0 +1,452 @@
+package hmm;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This program includes the process of creating the observation
+ * and transition maps from a given pair of text files -- the first
+ * has the sentences and the other includes the corresponding
+ * part-of-speech tags. Furthermore, this program includes
+ * the Viterbi algorithm that uses the Hidden Markov Model created by the
+ * observation and transition maps to properly tag sentence(s).
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class HiddenMarkovModel {
+    private final CorpusCounts counts;  // raw POS-word and POS-POS frequencies, null for a loaded model
+    private volatile CompiledModel compiledModel;  // dense, int-indexed POS-word and POS-POS log-probabilities
+    private volatile boolean stale;  // counts changed since compiledModel was built
+    private final boolean unknownWordFeatures;  // score unknown words by shape and suffix instead of the penalty
+
+    private static final int TRAINING_CHUNK_LINES = 4096;  // sentences counted by one training task.
+
+    // one reusable decoder per thread for this model, so tagging does not allocate per sentence
+    // and a thread switching between models keeps each model's buffers and unknown word cache.
+    private final ThreadLocal<ViterbiDecoder> decoders = ThreadLocal.withInitial(ViterbiDecoder::new);
+    private final ThreadLocal<DenseDecoder> denseDecoders = ThreadLocal.withInitial(DenseDecoder::new);
+
+    /**
+     * Constructor that instantiates Hidden Markov Model.
+     *
+     * @param fileTags      training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     */
+    public HiddenMarkovModel(String fileTags, String fileSentences) throws IOException {
+        this(fileTags, fileSentences, false);
+    }
+
+    /**
+     * Constructor that instantiates Hidden Markov Model, optionally scoring words that were
+     * never seen in training by their shape and suffix (see {@link UnknownWords}) instead
+     * of giving every tag the penalty score.
+     *
+     * @param fileTags            training text file with POS tags.
+     * @param fileSentences       training text file with sentences.
+     * @param unknownWordFeatures score unknown words by their shape and suffix.
+     */
+    public HiddenMarkovModel(String fileTags, String fileSentences, boolean unknownWordFeatures) throws IOException {
+        this.unknownWordFeatures = unknownWordFeatures;
+        counts = loadFileToCounts(fileTags, fileSentences);
+        long startNanos = System.nanoTime();
+        compiledModel = CompiledModel.compile(counts, null, unknownWordFeatures);
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().modelCompiled(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Constructor that wraps an already trained model, e.g. one read by {@link #load(String)}.
+     *
+     * @param compiledModel compiled model.
+     */
+    public HiddenMarkovModel(CompiledModel compiledModel) {
+        this.counts = null;
+        this.compiledModel = compiledModel;
+        this.unknownWordFeatures = compiledModel.getUnknownWords().hasSignatures();
+    }
+
+    /**
+     * Adds one tagged sentence to the training counts. The log-probabilities are
+     * brought up to date the next time the model decodes.
+     *
+     * @param words words of the sentence.
+     * @param tags  tag of every word.
+     * @throws IllegalArgumentException if there is not exactly one tag per word.
+     * @throws IllegalStateException if the model was loaded from a model file and has no counts.
+     */
+    public void addSentence(String[] words, String[] tags) {
+        requireCounts();
+        synchronized (this) {
+            counts.addSentence(words, tags);
+            stale = true;
+        }
+    }
+
+    /**
+     * Adds a pair of training files to the training counts. The files are counted in
+     * parallel first and merged in afterwards, so decoding is only held up by the merge.
+     *
+     * @param fileTags      training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @throws IOException checks if file exists and can be read.
+     * @throws IllegalStateException if the model was loaded from a model file and has no counts.
+     */
+    public void addCorpus(String fileTags, String fileSentences) throws IOException {
+        requireCounts();
+        CorpusCounts corpus = loadFileToCounts(fileTags, fileSentences);
+        synchronized (this) {
+            long startNanos = System.nanoTime();
+            counts.merge(corpus);
+            stale = true;
+            if (ModelMetrics.ENABLED) {
+                ModelMetrics.get().countsMerged(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * @return raw counts the model was trained from, null for a loaded model; read them
+     *         while holding the model's lock, since sentences may be added concurrently.
+     */
+    CorpusCounts getCounts() {
+        return counts;
+    }
+
+    /**
+     * Checks that the model keeps the counts it was trained from.
+     */
+    private void requireCounts() {
+        if (counts == null) {
+            throw new IllegalStateException("model was loaded without training counts; retrain it to add sentences");
+        }
+    }
+
+    /**
+     * Loads a model saved with {@link #save(String)} without retraining.
+     *
+     * @param fileModel binary model file.
+     * @return model.
+     * @throws IOException checks that the file exists and is a model file.
+     */
+    public static HiddenMarkovModel load(String fileModel) throws IOException {
+        return new HiddenMarkovModel(ModelFile.load(fileModel));
+    }
+
+    /**
+     * Saves the model to a binary model file.
+     *
+     * @param fileModel file to write.
+     * @throws IOException checks that the file can be written.
+     */
+    public void save(String fileModel) throws IOException {
+        ModelFile.save(getCompiledModel(), fileModel);
+    }
+
+    /**
+     * Builds a compact copy of the model for running many models in one heap: emission
+     * log-probabilities quantized to shorts, emissions seen fewer than minCount times
+     * dropped, and a sorted vocabulary (see {@link CompiledModel#compact(CompiledModel, CorpusCounts, int)}).
+     * The copy keeps no training counts, so sentences cannot be added to it.
+     *
+     * @param minCount fewest times an emission must have been seen to be kept; 1 keeps every emission.
+     * @return compact model.
+     * @throws IllegalStateException if minCount is above 1 and the model was loaded without counts.
+     */
+    public HiddenMarkovModel compact(int minCount) {
+        if (minCount > 1) {
+            requireCounts();
+        }
+        synchronized (this) {
+            return new HiddenMarkovModel(CompiledModel.compact(getCompiledModel(), counts, minCount));
+        }
+    }
+
+    /**
+     * @return compiled, int-indexed form of the model used for decoding.
+     */
+    public CompiledModel getCompiledModel() {
+        if (stale) {
+            synchronized (this) {
+                // only the rows that changed since the last compilation are normalised again.
+                if (stale) {
+                    long startNanos = System.nanoTime();
+                    compiledModel = CompiledModel.compile(counts, compiledModel, unknownWordFeatures);
+                    stale = false;
+                    if (ModelMetrics.ENABLED) {
+                        ModelMetrics.get().modelCompiled(System.nanoTime() - startNanos);
+                    }
+                }
+            }
+        }
+        return compiledModel;
+    }
+
+    /**
+     * Reads the training sentence and tag files together in one pass and counts
+     * POS-word and POS-POS frequencies in parallel on the common ForkJoinPool.
+     *
+     * @param fileTags training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @return merged counts.
+     * @throws IOException checks if file exists and can be read.
+     */
+    public static CorpusCounts loadFileToCounts(String fileTags, String fileSentences) throws IOException {
+        return loadFileToCounts(fileTags, fileSentences, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads the training sentence and tag files together in one pass through a
+     * {@link CorpusReader}, hands chunks of lines to the executor to be tokenised and
+     * counted in parallel, and merges the partial counts. Only a bounded number of
+     * chunks is counted at once.
+     *
+     * @param fileTags training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @param executor executor the chunks are counted on.
+     * @return merged counts.
+     * @throws IOException checks if file exists and can be read.
+     * @throws IllegalArgumentException if the files have different numbers of lines, or a
+     *                                  line has different numbers of words and tags.
+     */
+    public static CorpusCounts loadFileToCounts(String fileTags, String fileSentences, ExecutorService executor) throws IOException {
+        long startNanos = System.nanoTime();
+        CorpusCounts counts = new CorpusCounts();
+        Deque<Future<CorpusReader.Counts>> inFlight = new ArrayDeque<>();
+        int maxInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+
+        CorpusReader reader = new CorpusReader(fileTags, fileSentences);
+        try {
+            CorpusReader.Chunk chunk;
+            while ((chunk = reader.nextChunk(TRAINING_CHUNK_LINES)) != null) {
+                inFlight.add(executor.submit(chunk::count));
+                // merges finished chunks so memory stays bounded.
+                while (inFlight.size() >= maxInFlight) {
+                    Tasks.await(inFlight.poll()).mergeInto(counts);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                Tasks.await(inFlight.poll()).mergeInto(counts);
+            }
+        } finally {
+            // a failure leaves no chunks running in the background.
+            for (Future<CorpusReader.Counts> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().corpusCounted(System.nanoTime() - startNanos);
+        }
+        return counts;
+    }
+
+    /**
+     * Reads training text file with sentences and part-of-speech (POS) tags
+     * and keeps track POS-word frequencies.
+     *
+     * @param fileTags training text file with POS tags.
+     * @param fileSentences training text file with sentences.
+     * @return frequency map.
+     * @throws IOException checks if file exists and can be read.
+     * @throws IllegalArgumentException if a line has different numbers of words and tags.
+     */
+    public static Map<String, Map<String, Double>> loadFileToMapObservations(String fileTags, String fileSentences) throws IOException {
+        Map<String, Map<String, Double>> observationMap = new HashMap<>();
+
+        BufferedReader inputPartOfSpeech = new BufferedReader(new FileReader(fileTags));  // reads POS sequences
+        BufferedReader inputSentence = new BufferedReader(new FileReader(fileSentences));  // reads sentences
+
+        String strPOS, strWordObservations;
+        int lineNumber = 0;
+        while ((strPOS = inputPartOfSpeech.readLine()) != null && (strWordObservations = inputSentence.readLine()) != null) {
+            lineNumber++;
+
+            // split line of tag sequences by a space.
+            String[] listOfPOS = strPOS.split(" ");
+
+            // split line of sentences by a space.
+            String[] listOfWordObservations = strWordObservations.split(" ");
+
+            // checks that every word has a tag before pairing them up.
+            if (listOfPOS.length != listOfWordObservations.length) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + fileSentences + " has "
+                        + listOfWordObservations.length + " words but " + fileTags + " has " + listOfPOS.length + " tags");
+            }
+
+            // iterates through list of tags
+            for(int i = 0; i < listOfPOS.length; i++) {
+                // checks if tag is encountered for the first time.
+                if(!observationMap.containsKey(listOfPOS[i])) {
+                    Map<String, Double> frequencyMap = new HashMap<>(); // instantiate a new map to store word-tag pair.
+                    frequencyMap.put(listOfWordObservations[i].toLowerCase(), 1.0);
+                    observationMap.put(listOfPOS[i], frequencyMap);
+                }
+
+                // checks if tag has already been encountered.
+                else if(observationMap.containsKey(listOfPOS[i])) {
+                    // checks if word-tag pair already exists and increments frequency.
+                    if(observationMap.get(listOfPOS[i]).get(listOfWordObservations[i]) != null) {
+                        observationMap.get(listOfPOS[i]).put(listOfWordObservations[i],
+                                observationMap.get(listOfPOS[i]).get(listOfWordObservations[i]) + 1);
+                    }
+                    // the tag exists but has not been paired with word.
+                    else {
+                        observationMap.get(listOfPOS[i]).put(listOfWordObservations[i].toLowerCase(), 1.0);
+                    }
+                }
+            }
+        }
+        // converts word-tag pair frequencies into percentages
+        return getMapProbabilities(observationMap);
+    }
+
+    /**
+     * Read training tag file and keeps track of the
+     * transitions from one part-of-speech to the next.
+     *
+     * @param fileTags training text file with POS tags.
+     * @throws IOException checks if file exists and can be read.
+     */
+    public static Map<String, Map<String, Double>> loadFileToMapTransitions(String fileTags) throws IOException {
+        Map<String, Map<String, Double>> transitionMap = new HashMap<>();
+        BufferedReader inputPartOfSpeech = new BufferedReader(new FileReader(fileTags));
+
+        String strPOS;
+        while((strPOS = inputPartOfSpeech.readLine()) != null) {
+            String[] listOfPOS = strPOS.split(" ");
+
+            // iterates through line of tags
+            for(int i = -1; i <= listOfPOS.length - 2; i++) {
+                if(i == -1) {
+                    // checks that transitionMap has the # (start) tag.
+                    if (!transitionMap.containsKey("#")) {
+                    Map<String, Double> frequencyMap = new HashMap<>();
+                    frequencyMap.put(listOfPOS[i + 1], 1.0);
+                    transitionMap.put("#", frequencyMap);
+                    }
+                    // checks that transitionMap already has # (start) tag.
+                    else if(transitionMap.containsKey("#")) {
+                        // has the # (start) tag and encounters am already-seen POS tag.
+                        if(transitionMap.get("#").containsKey(listOfPOS[i+1])) {
+                            transitionMap.get("#").put(listOfPOS[i+1], transitionMap.get("#").get(listOfPOS[i+1]) + 1);
+                        }
+                        // has the # (start) but encounters a new POS.
+                        else {
+                            transitionMap.get("#").put(listOfPOS[i+1], 1.0);
+                        }
+                    }
+                }
+                // starts to keep track of transitions after # (start) tag.
+                if(i != -1) {
+                    int j = i + 1;
+                    // checks that a newly-encountered POS tag has been found.
+                    if(!transitionMap.containsKey(listOfPOS[i])) {
+                        Map<String, Double> frequencyMap = new HashMap<>();
+                        frequencyMap.put(listOfPOS[j], 1.0);
+                        transitionMap.put(listOfPOS[i], frequencyMap);
+                    }
+                    // checks that an already existing tag exists in the transitionMap.
+                    else if(transitionMap.containsKey(listOfPOS[i])) {
+                        // checks that a transition pair already exits and increments its frequency.
+                        if(transitionMap.get(listOfPOS[i]).get(listOfPOS[j]) != null) {
+                            transitionMap.get(listOfPOS[i]).put(listOfPOS[j],
+                                    transitionMap.get(listOfPOS[i]).get(listOfPOS[j]) + 1);
+                        }
+                        // increments count to 1 for a newly-discovered transition pair.
+                        else {
+                            transitionMap.get(listOfPOS[i]).put(listOfPOS[j], 1.0);
+                        }
+                    }
+                }
+            }
+        }
+        // convert to probabilities
+        return getMapProbabilities(transitionMap);
+    }
+
+    /**
+     * Converts frequencies to probabilities.
+     * @param map either the observationMap or transitionMap.
+     * @return map of maps with probabilities
+     */
+    static Map<String, Map<String, Double>> getMapProbabilities(Map<String, Map<String, Double>> map) {
+        // iterate through every key in the outer map.
+        for(Map.Entry<String, Map<String, Double>> entryOuter : map.entrySet()) {
+            Double total = 0.0;
+            // iterate through every key in the inner map.
+            for(Map.Entry<String, Double> entryInner : entryOuter.getValue().entrySet()) {
+                total += entryInner.getValue();
+            }
+            // override the frequency with probability.
+            for(Map.Entry<String, Double> tagToWordFrequency : entryOuter.getValue().entrySet()) {
+                map.get(entryOuter.getKey()).put(tagToWordFrequency.getKey(),
+                        Math.log(tagToWordFrequency.getValue()/total));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Performs Viterbi decoding to find the best sequence of tags for a line (sequence of words)
+     * @param words array of words
+     * @return best possible path
+     * NOTE: DOES NOT WORK WITH PUNCTUATION!!!! FIND A WAT TO HANDLE THIS SPECIAL CASE
+     */
+    public ArrayList<String> Viterbi(String[] words) {
+        String[] tags = new String[words.length];
+        tag(words, tags);
+        return new ArrayList<>(Arrays.asList(tags));
+    }
+
+    /**
+     * @return this thread's decoder for this model, reused across sentences.
+     */
+    ViterbiDecoder decoder() {
+        return decoders.get();
+    }
+
+    /**
+     * Performs Viterbi decoding into a caller-supplied buffer, reusing this thread's
+     * decoder so steady-state tagging does not allocate.
+     * @param words array of words
+     * @param tagsOut receives one tag per word; must be at least words.length long
+     */
+    public void tag(String[] words, String[] tagsOut) {
+        decoders.get().tag(getCompiledModel(), words, tagsOut);
+    }
+
+    /**
+     * Performs Viterbi decoding into a caller-supplied buffer of tag ids
+     * (see {@link CompiledModel#tag(int)}), reusing this thread's decoder.
+     * @param words array of words
+     * @param tagIdsOut receives one tag id per word; must be at least words.length long
+     */
+    public void tag(String[] words, int[] tagIdsOut) {
+        decoders.get().tag(getCompiledModel(), words, tagIdsOut);
+    }
+
+    /**
+     * Performs Viterbi decoding into a caller-supplied buffer of tag ids, and gives the
+     * probability of each tag given the whole sentence (its posterior) as a confidence.
+     * @param words array of words
+     * @param tagIdsOut receives one tag id per word; must be at least words.length long
+     * @param confidenceOut receives the confidence of each tag, between 0 and 1; must be at least words.length long
+     */
+    public void tag(String[] words, int[] tagIdsOut, double[] confidenceOut) {
+        denseDecoders.get().tag(getCompiledModel(), words, tagIdsOut, confidenceOut);
+    }
+
+    /**
+     * Computes the probability of every tag at every word given the whole sentence
+     * (the posterior marginals), by forward-backward.
+     * @param words array of words
+     * @return [word][tag id] -> probability, see {@link CompiledModel#tag(int)}; every row sums to 1
+     */
+    public double[][] posteriors(String[] words) {
+        return denseDecoders.get().posteriors(getCompiledModel(), words);
+    }
+}
@@ -0,0 +1,170 @@
+package hmm;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This program includes a load generator for {@link TaggingServer}: a number of
+ * clients post sentences from a file to /tag as fast as the server answers, for a
+ * fixed time, and the throughput, latency percentiles and rejections seen by the
+ * clients are reported. Rejected requests are retried after a short pause.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class LoadGenerator {
+    private static final long REJECTED_PAUSE_MILLIS = 5;  // pause after a 503 before the next request.
+
+    /**
+     * Posts requests from several clients for a fixed time.
+     *
+     * @param uri                 URI of the /tag endpoint.
+     * @param sentences           sentences to send, each an array of words; sent round robin.
+     * @param numClients          number of clients sending at once.
+     * @param durationMillis      how long to send for.
+     * @param sentencesPerRequest sentences in every request.
+     * @return what the clients saw.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    public static Report run(URI uri, List<String[]> sentences, int numClients, long durationMillis,
+                             int sentencesPerRequest) throws InterruptedException {
+        // builds every request body once, so the clients only measure the server.
+        List<byte[]> bodies = new ArrayList<>();
+        List<Integer> bodyTokens = new ArrayList<>();
+        for (int start = 0; start < sentences.size(); start += sentencesPerRequest) {
+            StringBuilder body = new StringBuilder();
+            int tokens = 0;
+            for (String[] words : sentences.subList(start, Math.min(start + sentencesPerRequest, sentences.size()))) {
+                body.append(String.join(" ", words)).append('\n');
+                tokens += words.length;
+            }
+            bodies.add(body.toString().getBytes(StandardCharsets.UTF_8));
+            bodyTokens.add(tokens);
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Report report = new Report();
+        AtomicInteger next = new AtomicInteger();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        Thread[] clients = new Thread[numClients];
+        for (int c = 0; c < numClients; c++) {
+            clients[c] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    int body = Math.floorMod(next.getAndIncrement(), bodies.size());
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(bodies.get(body))).build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200) {
+                            report.latency.record(System.nanoTime() - start);
+                            report.requests.increment();
+                            report.tokens.add(bodyTokens.get(body));
+                        } else if (response.statusCode() == 503) {
+                            report.rejected.increment();
+                            Thread.sleep(REJECTED_PAUSE_MILLIS);
+                        } else {
+                            report.errors.increment();
+                        }
+                    } catch (IOException e) {
+                        report.errors.increment();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "hmm-load-" + c);
+            clients[c].start();
+        }
+        long started = System.nanoTime();
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        report.seconds = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+        return report;
+    }
+
+    /**
+     * This program includes what the clients of a load run saw.
+     */
+    public static final class Report {
+        private final LongAdder requests = new LongAdder();  // answered with tags
+        private final LongAdder rejected = new LongAdder();  // answered with 503
+        private final LongAdder errors = new LongAdder();  // failed or answered with another status
+        private final LongAdder tokens = new LongAdder();  // words tagged
+        private final LatencyHistogram latency = new LatencyHistogram();  // of answered requests
+        private double seconds;
+
+        /**
+         * @return requests answered with tags.
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return requests the server rejected.
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return requests that failed.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return latency of the requests answered with tags.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "requests " + getRequests() + " (" + (int) (getRequests() / seconds) + "/s)"
+                    + ", rejected " + getRejected() + ", errors " + getErrors()
+                    + ", tokens/s " + (long) (tokens.sum() / seconds)
+                    + ", latency p50 " + latency.getPercentileMillis(50) + " ms"
+                    + ", p99 " + latency.getPercentileMillis(99) + " ms";
+        }
+    }
+
+    /**
+     * Runs a load test against a running server.
+     * Usage: LoadGenerator url sentences-file [clients] [seconds] [sentences-per-request].
+     *
+     * @param args URL of /tag, sentence file, then optionally clients (8), seconds (10)
+     *             and sentences per request (1).
+     * @throws IOException checks that the sentence file exists.
+     * @throws InterruptedException if interrupted while waiting for the clients.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("usage: LoadGenerator <url> <sentences file> [clients] [seconds] [sentences per request]");
+            System.exit(2);
+        }
+        List<String[]> sentences = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            sentences.add(line.split(" "));
+        }
+        int numClients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        int sentencesPerRequest = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        System.out.println(run(URI.create(args[0]), sentences, numClients, TimeUnit.SECONDS.toMillis(seconds),
+                sentencesPerRequest));
+    }
+}
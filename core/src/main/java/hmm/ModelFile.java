@@ -0,0 +1,239 @@
+package hmm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This program includes saving a compiled Hidden Markov Model to a compact binary
+ * file and loading it back through a memory-mapped FileChannel, so a model does
+ * not have to be retrained on every start.
+ *
+ * The loaded model keeps the mapping: the word index, the signature scores and
+ * both vocabularies (words and unknown word signatures, with their hash tables)
+ * are read in place through buffer views, so loading does not copy them or
+ * decode a String per word, and the operating system pages them in as they are
+ * used. Only the tag names, the transition matrix and the fallback scores, which
+ * are numTags x numTags at most, are copied to the heap. A compact model (see
+ * {@link CompiledModel#compact(CompiledModel, CorpusCounts, int)}) is saved with its
+ * quantized shorts and quantization step, so it loads as the same compact model.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   int    magic "HMM\0", int version
+ *   int    numTags, int numWords, int numEntries, int numSignatures
+ *   int    wordSlots, int wordBytes, int signatureSlots, int signatureBytes
+ *   numTags       x (int length, UTF-8 bytes)   tag names, # (start) first
+ *   padding up to a multiple of 8 bytes
+ *   double                                      quantization step of a compact model, 0 for exact scores
+ *   double[numTags * numTags]                   transition log-probabilities
+ *   double[numEntries]                          emission log-probabilities of the word index, exact scores only
+ *   double[numTags]                             unknown word scores when no signature matches
+ *   double[numSignatures * numTags]             unknown word scores of every signature
+ *   int[numWords + 2]                           start of every word's entries
+ *   int[numEntries]                             tag id of every entry
+ *   short[numEntries]                           -log-probability of every entry in quantization steps, compact only
+ *   vocabulary, as written by WordIndex:
+ *     int[numWords + 1]                         start of every word's bytes
+ *     int[wordSlots]                            hash table of word ids, none for a sorted vocabulary
+ *     byte[wordBytes]                           UTF-8 bytes of every word in word id order
+ *   unknown word signatures, the same way with numSignatures, signatureSlots and signatureBytes
+ * </pre>
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class ModelFile {
+    private static final int MAGIC = 0x484D4D00;  // "HMM\0"
+    private static final int VERSION = 1;
+
+    /**
+     * Writes a compiled model to a file.
+     *
+     * @param model compiled model.
+     * @param file  file to write.
+     * @throws IOException checks that the file can be written.
+     */
+    public static void save(CompiledModel model, String file) throws IOException {
+        int numTags = model.numTags();
+        WordIndex vocabulary = model.vocabulary();
+        UnknownWords unknownWords = model.getUnknownWords();
+        WordIndex signatures = unknownWords.signatures();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(numTags);
+            output.writeInt(model.numWords());
+            output.writeInt(model.numEntries());
+            output.writeInt(signatures.size());
+            output.writeInt(vocabulary.numSlots());
+            output.writeInt(vocabulary.numBytes());
+            output.writeInt(signatures.numSlots());
+            output.writeInt(signatures.numBytes());
+            for (int tag = 0; tag < numTags; tag++) {
+                writeString(output, model.tag(tag));
+            }
+            // aligns the tables so they can be read as doubles straight from the mapping.
+            while (output.size() % Double.BYTES != 0) {
+                output.writeByte(0);
+            }
+            output.writeDouble(model.getQuantizationStep());
+            writeDoubles(output, model.transitions());
+            for (int k = 0; k < model.numEntries() && !model.isCompact(); k++) {
+                output.writeDouble(model.emittingScore(k));
+            }
+            writeDoubles(output, unknownWords.fallback());
+            double[] scores = new double[numTags];
+            for (int signature = 0; signature < signatures.size(); signature++) {
+                unknownWords.signatureEmissions(signature, scores);
+                writeDoubles(output, scores);
+            }
+            for (int word = 0; word <= model.numWords() + 1; word++) {
+                output.writeInt(model.emittingOffset(word));
+            }
+            for (int k = 0; k < model.numEntries(); k++) {
+                output.writeInt(model.emittingTag(k));
+            }
+            for (int k = 0; k < model.numEntries() && model.isCompact(); k++) {
+                output.writeShort(model.quantizedScore(k));
+            }
+            vocabulary.write(output);
+            signatures.write(output);
+        }
+    }
+
+    /**
+     * Loads a compiled model from a file by memory-mapping it. The model reads its
+     * word index, signature scores and vocabularies from the mapping, which stays
+     * valid after the file is closed.
+     *
+     * @param file file written by {@link #save(CompiledModel, String)}.
+     * @return compiled model.
+     * @throws IOException checks that the file exists and is a model file of a supported version.
+     */
+    public static CompiledModel load(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a model file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported model file version " + version);
+            }
+            int numTags = buffer.getInt();
+            int numWords = buffer.getInt();
+            int numEntries = buffer.getInt();
+            int numSignatures = buffer.getInt();
+            int wordSlots = buffer.getInt();
+            int wordBytes = buffer.getInt();
+            int signatureSlots = buffer.getInt();
+            int signatureBytes = buffer.getInt();
+
+            String[] tags = readStrings(buffer, numTags);
+            align(buffer);
+            if (buffer.remaining() < Double.BYTES) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            double quantizationStep = buffer.getDouble();
+            boolean compact = quantizationStep > 0;
+            long doubles = (long) numTags * numTags + (compact ? 0 : numEntries) + numTags + (long) numSignatures * numTags;
+            long ints = numWords + 2L + numEntries + numWords + 1L + wordSlots + numSignatures + 1L + signatureSlots;
+            long shorts = compact ? numEntries : 0;
+            if (buffer.remaining() != doubles * Double.BYTES + ints * Integer.BYTES + shorts * Short.BYTES
+                    + wordBytes + signatureBytes) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            double[] transitions = new double[numTags * numTags];
+            doubles(buffer, transitions.length).get(transitions);
+            DoubleBuffer emittingScores = compact ? null : doubles(buffer, numEntries);
+            double[] fallback = new double[numTags];
+            doubles(buffer, numTags).get(fallback);
+            DoubleBuffer signatureScores = doubles(buffer, numSignatures * numTags);
+            IntBuffer emittingOffsets = ints(buffer, numWords + 2);
+            IntBuffer emittingTags = ints(buffer, numEntries);
+            ShortBuffer quantizedScores = compact ? shorts(buffer, numEntries) : null;
+            WordIndex vocabulary = WordIndex.read(buffer, numWords, wordSlots, wordBytes);
+            WordIndex signatures = WordIndex.read(buffer, numSignatures, signatureSlots, signatureBytes);
+            UnknownWords unknownWords = new UnknownWords(signatures, signatureScores, fallback);
+            if (compact) {
+                return new CompiledModel(tags, vocabulary, transitions, emittingOffsets, emittingTags, quantizedScores,
+                        quantizationStep, unknownWords);
+            }
+            return new CompiledModel(tags, vocabulary, transitions, emittingOffsets, emittingTags, emittingScores,
+                    unknownWords);
+        }
+    }
+
+    /**
+     * Writes doubles one after the other.
+     */
+    private static void writeDoubles(DataOutputStream output, double[] values) throws IOException {
+        for (double value : values) {
+            output.writeDouble(value);
+        }
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads length-prefixed UTF-8 strings.
+     */
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Views the next count doubles of a buffer in place and moves past them.
+     */
+    private static DoubleBuffer doubles(ByteBuffer buffer, int count) {
+        DoubleBuffer view = buffer.slice(buffer.position(), count * Double.BYTES).asDoubleBuffer();
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return view;
+    }
+
+    /**
+     * Views the next count ints of a buffer in place and moves past them.
+     */
+    private static IntBuffer ints(ByteBuffer buffer, int count) {
+        IntBuffer view = buffer.slice(buffer.position(), count * Integer.BYTES).asIntBuffer();
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return view;
+    }
+
+    /**
+     * Views the next count shorts of a buffer in place and moves past them.
+     */
+    private static ShortBuffer shorts(ByteBuffer buffer, int count) {
+        ShortBuffer view = buffer.slice(buffer.position(), count * Short.BYTES).asShortBuffer();
+        buffer.position(buffer.position() + count * Short.BYTES);
+        return view;
+    }
+
+    /**
+     * Skips the padding up to the next multiple of 8 bytes.
+     */
+    private static void align(ByteBuffer buffer) {
+        buffer.position((buffer.position() + Double.BYTES - 1) / Double.BYTES * Double.BYTES);
+    }
+}
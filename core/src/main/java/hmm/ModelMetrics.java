@@ -0,0 +1,262 @@
+package hmm;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This program includes runtime metrics of every Hidden Markov Model in the JVM,
+ * exported over JMX as hmm:type=ModelMetrics: sentences and words tagged,
+ * per-sentence tagging latency (also per word, to tell long sentences from slow
+ * ones), states expanded per word, how often a word was never seen in training,
+ * the JVM's garbage collection totals, and the time spent in each training phase.
+ *
+ * Metrics are off unless the JVM is started with -Dhmm.metrics=true. The switch
+ * is a static final constant, so with metrics off the JIT removes the
+ * instrumentation from the decoding loop altogether.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class ModelMetrics implements ModelMetricsMBean {
+    /**
+     * Whether metrics are recorded, from the hmm.metrics system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("hmm.metrics");
+
+    private static final String OBJECT_NAME = "hmm:type=ModelMetrics";
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final ModelMetrics INSTANCE = ENABLED ? register(new ModelMetrics()) : new ModelMetrics();
+
+    private final LongAdder sentences = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder unknownWords = new LongAdder();
+    private final LongAdder statesExpanded = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();  // per sentence
+    private final LatencyHistogram nanosPerToken = new LatencyHistogram();  // per sentence, divided by its length
+    private final LatencyHistogram sentenceLength = new LatencyHistogram();  // in words, not nanoseconds
+    private final LongAdder countingNanos = new LongAdder();
+    private final LongAdder mergingNanos = new LongAdder();
+    private final LongAdder compilingNanos = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+    private volatile long lastCompileNanos;
+
+    /**
+     * @return the metrics every model records into; only registered with JMX when {@link #ENABLED}.
+     */
+    public static ModelMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     */
+    private static ModelMetrics register(ModelMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // another copy of the class (e.g. in a second class loader) owns the name; keep counting locally.
+            System.err.println("hmm: could not register " + OBJECT_NAME + ": " + e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Records one tagged sentence.
+     *
+     * @param length   number of words.
+     * @param unknown  words never seen in training.
+     * @param expanded states expanded.
+     * @param nanos    time taken to tag the sentence.
+     */
+    void sentenceDecoded(int length, long unknown, long expanded, long nanos) {
+        sentences.increment();
+        tokens.add(length);
+        unknownWords.add(unknown);
+        statesExpanded.add(expanded);
+        latency.record(nanos);
+        nanosPerToken.record(nanos / length);
+        sentenceLength.record(length);
+    }
+
+    /**
+     * Records reading and counting a training corpus.
+     *
+     * @param nanos time taken.
+     */
+    void corpusCounted(long nanos) {
+        countingNanos.add(nanos);
+    }
+
+    /**
+     * Records merging added counts into a model's counts.
+     *
+     * @param nanos time taken.
+     */
+    void countsMerged(long nanos) {
+        mergingNanos.add(nanos);
+    }
+
+    /**
+     * Records compiling counts into log-probabilities.
+     *
+     * @param nanos time taken.
+     */
+    void modelCompiled(long nanos) {
+        compilingNanos.add(nanos);
+        compilations.increment();
+        lastCompileNanos = nanos;
+    }
+
+    @Override
+    public long getSentences() {
+        return sentences.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getUnknownWords() {
+        return unknownWords.sum();
+    }
+
+    @Override
+    public double getUnknownWordRate() {
+        long numTokens = tokens.sum();
+        return numTokens == 0 ? 0 : (double) unknownWords.sum() / numTokens;
+    }
+
+    @Override
+    public long getStatesExpanded() {
+        return statesExpanded.sum();
+    }
+
+    @Override
+    public double getStatesExpandedPerToken() {
+        long numTokens = tokens.sum();
+        return numTokens == 0 ? 0 : (double) statesExpanded.sum() / numTokens;
+    }
+
+    @Override
+    public double getLatencyMeanMicros() {
+        return latency.getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latency.getPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latency.getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getLatencyMaxMicros() {
+        return latency.getPercentile(100) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getNanosPerTokenP50() {
+        return nanosPerToken.getPercentile(50);
+    }
+
+    @Override
+    public long getNanosPerTokenP99() {
+        return nanosPerToken.getPercentile(99);
+    }
+
+    @Override
+    public long getSentenceLengthP99() {
+        return sentenceLength.getPercentile(99);
+    }
+
+    @Override
+    public long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    @Override
+    public long getCountingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(countingNanos.sum());
+    }
+
+    @Override
+    public long getMergingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mergingNanos.sum());
+    }
+
+    @Override
+    public long getCompilingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(compilingNanos.sum());
+    }
+
+    @Override
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    @Override
+    public double getLastCompileMillis() {
+        return lastCompileNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void reset() {
+        sentences.reset();
+        tokens.reset();
+        unknownWords.reset();
+        statesExpanded.reset();
+        latency.reset();
+        nanosPerToken.reset();
+        sentenceLength.reset();
+        countingNanos.reset();
+        mergingNanos.reset();
+        compilingNanos.reset();
+        compilations.reset();
+        lastCompileNanos = 0;
+    }
+
+    /**
+     * @return every attribute as a "name value" line.
+     */
+    @Override
+    public String toString() {
+        return "sentences " + getSentences() + "\n"
+                + "tokens " + getTokens() + "\n"
+                + "unknown_word_rate " + getUnknownWordRate() + "\n"
+                + "states_expanded_per_token " + getStatesExpandedPerToken() + "\n"
+                + "latency_us_p50 " + getLatencyP50Micros() + "\n"
+                + "latency_us_p99 " + getLatencyP99Micros() + "\n"
+                + "latency_us_max " + getLatencyMaxMicros() + "\n"
+                + "ns_per_token_p50 " + getNanosPerTokenP50() + "\n"
+                + "ns_per_token_p99 " + getNanosPerTokenP99() + "\n"
+                + "sentence_length_p99 " + getSentenceLengthP99() + "\n"
+                + "gc_count " + getGcCount() + "\n"
+                + "gc_time_ms " + getGcTimeMillis() + "\n"
+                + "counting_ms " + getCountingMillis() + "\n"
+                + "merging_ms " + getMergingMillis() + "\n"
+                + "compiling_ms " + getCompilingMillis() + "\n"
+                + "compilations " + getCompilations() + "\n";
+    }
+}
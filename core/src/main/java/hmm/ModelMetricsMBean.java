@@ -0,0 +1,115 @@
+package hmm;
+
+/**
+ * This program includes the attributes and operations {@link ModelMetrics}
+ * exports over JMX, under the name hmm:type=ModelMetrics.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public interface ModelMetricsMBean {
+    /**
+     * @return sentences tagged.
+     */
+    long getSentences();
+
+    /**
+     * @return words tagged.
+     */
+    long getTokens();
+
+    /**
+     * @return words tagged that were never seen in training.
+     */
+    long getUnknownWords();
+
+    /**
+     * @return unknown words / words tagged.
+     */
+    double getUnknownWordRate();
+
+    /**
+     * @return live states whose successors were scored.
+     */
+    long getStatesExpanded();
+
+    /**
+     * @return states expanded / words tagged.
+     */
+    double getStatesExpandedPerToken();
+
+    /**
+     * @return mean time to tag a sentence, in microseconds.
+     */
+    double getLatencyMeanMicros();
+
+    /**
+     * @return median time to tag a sentence, in microseconds.
+     */
+    double getLatencyP50Micros();
+
+    /**
+     * @return 99th percentile of the time to tag a sentence, in microseconds.
+     */
+    double getLatencyP99Micros();
+
+    /**
+     * @return longest time to tag a sentence, in microseconds.
+     */
+    double getLatencyMaxMicros();
+
+    /**
+     * @return median time to tag a sentence divided by its length, in nanoseconds.
+     */
+    long getNanosPerTokenP50();
+
+    /**
+     * @return 99th percentile of the time to tag a sentence divided by its length, in nanoseconds.
+     */
+    long getNanosPerTokenP99();
+
+    /**
+     * @return 99th percentile of the sentence length, in words.
+     */
+    long getSentenceLengthP99();
+
+    /**
+     * @return garbage collections since the JVM started, over every collector.
+     */
+    long getGcCount();
+
+    /**
+     * @return time spent in garbage collection since the JVM started, in milliseconds.
+     */
+    long getGcTimeMillis();
+
+    /**
+     * @return time spent reading and counting training corpora, in milliseconds.
+     */
+    long getCountingMillis();
+
+    /**
+     * @return time spent merging added corpora into the training counts, in milliseconds.
+     */
+    long getMergingMillis();
+
+    /**
+     * @return time spent compiling counts into log-probabilities, in milliseconds.
+     */
+    long getCompilingMillis();
+
+    /**
+     * @return number of compilations, full or incremental.
+     */
+    long getCompilations();
+
+    /**
+     * @return time the last compilation took, in milliseconds.
+     */
+    double getLastCompileMillis();
+
+    /**
+     * Sets every counter and histogram back to zero (the GC figures are the JVM's own).
+     */
+    void reset();
+}
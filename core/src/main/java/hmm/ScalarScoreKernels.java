@@ -0,0 +1,43 @@
+package hmm;
+
+/**
+ * This program includes the plain-loop {@link ScoreKernels}, used when the JDK
+ * Vector API is not available. The loops are simple counted loops over arrays,
+ * which the JIT can unroll and, for the max-plus and multiply-add steps, often
+ * vectorize on its own.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class ScalarScoreKernels implements ScoreKernels {
+    @Override
+    public void maxPlus(double score, double[] row, int rowOffset, double[] acc, int accOffset, int n) {
+        for (int j = 0; j < n; j++) {
+            double candidate = score + row[rowOffset + j];
+            if (candidate > acc[accOffset + j]) {
+                acc[accOffset + j] = candidate;
+            }
+        }
+    }
+
+    @Override
+    public void multiplyAdd(double weight, double[] row, int rowOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++) {
+            acc[j] += weight * row[rowOffset + j];
+        }
+    }
+
+    @Override
+    public double dot(double[] row, int rowOffset, double[] vector, int n) {
+        double sum = 0;
+        for (int j = 0; j < n; j++) {
+            sum += row[rowOffset + j] * vector[j];
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,79 @@
+package hmm;
+
+/**
+ * This program includes the vector operations dense decoding is built from: a
+ * max-plus step for Viterbi, and a multiply-add and a dot product for the scaled
+ * sums of forward-backward. Every one works on a whole row of the transition
+ * matrix at once.
+ *
+ * There are two implementations, picked once when the class is loaded: one on
+ * the JDK Vector API, used when the JVM is started with
+ * --add-modules jdk.incubator.vector, and plain loops otherwise. Both return the
+ * same max-plus and multiply-add results bit for bit; dot products may differ in
+ * the last bits because the vector one adds in a different order.
+ * -Dhmm.kernels=scalar forces the plain loops.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+interface ScoreKernels {
+    /**
+     * The kernels of this JVM.
+     */
+    ScoreKernels INSTANCE = select();
+
+    /**
+     * Max-plus step: acc[accOffset + j] = max(acc[accOffset + j], score + row[rowOffset + j]) for j below n.
+     *
+     * @param score     score added to every entry of the row.
+     * @param row       array holding the row, e.g. the transition matrix.
+     * @param rowOffset start of the row.
+     * @param acc       array holding the running maxima.
+     * @param accOffset start of the running maxima.
+     * @param n         length of the row.
+     */
+    void maxPlus(double score, double[] row, int rowOffset, double[] acc, int accOffset, int n);
+
+    /**
+     * Multiply-add step: acc[j] = acc[j] + weight * row[rowOffset + j] for j below n.
+     *
+     * @param weight    factor of the row.
+     * @param row       array holding the row.
+     * @param rowOffset start of the row.
+     * @param acc       running sums, n long.
+     * @param n         length of the row.
+     */
+    void multiplyAdd(double weight, double[] row, int rowOffset, double[] acc, int n);
+
+    /**
+     * @param row       array holding the row.
+     * @param rowOffset start of the row.
+     * @param vector    other vector, n long.
+     * @param n         length of the row.
+     * @return sum of row[rowOffset + j] * vector[j] for j below n.
+     */
+    double dot(double[] row, int rowOffset, double[] vector, int n);
+
+    /**
+     * @return name of the implementation, e.g. for benchmark reports.
+     */
+    String name();
+
+    /**
+     * Picks the Vector API kernels when the incubator module is present, the plain loops otherwise.
+     * A failure to load the vector kernels falls back to the plain loops silently;
+     * {@link DenseDecoder#kernels()} tells which ones are in use.
+     */
+    private static ScoreKernels select() {
+        if (!"scalar".equals(System.getProperty("hmm.kernels"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // loaded by name, so the JVM never links the vector classes without the module.
+                return (ScoreKernels) Class.forName("hmm.VectorScoreKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // falls back to the plain loops below.
+            }
+        }
+        return new ScalarScoreKernels();
+    }
+}
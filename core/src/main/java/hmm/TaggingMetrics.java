@@ -0,0 +1,153 @@
+package hmm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This program includes the counters a tagging service keeps: requests accepted
+ * and rejected, sentences and words tagged, batches decoded, and the latency of
+ * every request from the moment it is queued until its tags are ready. Every
+ * counter can be updated from many threads at once.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class TaggingMetrics {
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();  // requests accepted into the queue
+    private final LongAdder rejected = new LongAdder();  // requests turned away because the queue was full
+    private final LongAdder failed = new LongAdder();  // requests whose decoding threw
+    private final LongAdder sentences = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();  // queued -> tags ready
+    private final LatencyHistogram queueWait = new LatencyHistogram();  // queued -> batch starts decoding
+
+    /**
+     * Counts a request accepted into the queue.
+     */
+    void requestAccepted() {
+        requests.increment();
+    }
+
+    /**
+     * Counts a request rejected because the queue was full.
+     */
+    void requestRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Counts a request whose decoding threw, or that was refused as malformed or too long.
+     */
+    void requestFailed() {
+        failed.increment();
+    }
+
+    /**
+     * Records a request whose tags are ready.
+     *
+     * @param numSentences number of sentences in the request.
+     * @param numTokens    number of words in the request.
+     * @param queuedNanos  System.nanoTime() when the request was queued.
+     * @param startedNanos System.nanoTime() when its batch started decoding.
+     */
+    void requestCompleted(int numSentences, long numTokens, long queuedNanos, long startedNanos) {
+        sentences.add(numSentences);
+        tokens.add(numTokens);
+        queueWait.record(startedNanos - queuedNanos);
+        latency.record(System.nanoTime() - queuedNanos);
+    }
+
+    /**
+     * Counts a decoded batch.
+     */
+    void batchDecoded() {
+        batches.increment();
+    }
+
+    /**
+     * @return requests accepted into the queue.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return requests rejected because the queue was full.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return requests whose decoding failed.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return sentences tagged.
+     */
+    public long getSentences() {
+        return sentences.sum();
+    }
+
+    /**
+     * @return words tagged.
+     */
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    /**
+     * @return batches decoded.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return latency of requests from being queued until their tags are ready.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return time requests wait in the queue before their batch starts decoding.
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return words tagged per second since the metrics were created.
+     */
+    public double getTokensPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        return seconds == 0 ? 0 : getTokens() / seconds;
+    }
+
+    /**
+     * @return one "name value" line per metric, as served on /metrics.
+     */
+    @Override
+    public String toString() {
+        long numBatches = getBatches();
+        return "requests " + getRequests() + "\n"
+                + "rejected " + getRejected() + "\n"
+                + "failed " + getFailed() + "\n"
+                + "sentences " + getSentences() + "\n"
+                + "tokens " + getTokens() + "\n"
+                + "batches " + numBatches + "\n"
+                + "sentences_per_batch " + (numBatches == 0 ? 0 : (double) getSentences() / numBatches) + "\n"
+                + "tokens_per_second " + getTokensPerSecond() + "\n"
+                + "latency_ms_mean " + latency.getMean() / TimeUnit.MILLISECONDS.toNanos(1) + "\n"
+                + "latency_ms_p50 " + latency.getPercentileMillis(50) + "\n"
+                + "latency_ms_p99 " + latency.getPercentileMillis(99) + "\n"
+                + "queue_wait_ms_p50 " + queueWait.getPercentileMillis(50) + "\n"
+                + "queue_wait_ms_p99 " + queueWait.getPercentileMillis(99) + "\n";
+    }
+}
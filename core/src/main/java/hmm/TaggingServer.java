@@ -0,0 +1,378 @@
+package hmm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This program includes a long-running tagging service on a local HTTP port that
+ * shares one trained Hidden Markov Model between every request.
+ *
+ * POST /tag with one sentence per line returns the tags of every sentence, one
+ * line each; GET /metrics returns the counters of {@link TaggingMetrics}.
+ *
+ * Requests wait in a bounded queue. One dispatcher thread gathers them into
+ * micro-batches of at most maxBatchSentences sentences, waiting at most
+ * maxBatchDelayMillis after the oldest request, and hands every batch to a pool
+ * of worker threads. When every worker is busy the dispatcher stops taking
+ * requests, the queue fills up, and further requests are rejected right away
+ * (503 with Retry-After over HTTP) instead of piling up. A request body longer
+ * than maxRequestBytes is refused with 413 before more of it is read.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class TaggingServer implements AutoCloseable {
+    private static final int DEFAULT_MAX_BATCH_SENTENCES = 64;
+    private static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;  // requests waiting to be batched.
+    private static final int DEFAULT_MAX_REQUEST_BYTES = 4 << 20;  // longest POST /tag body, 4 MB.
+
+    private final HiddenMarkovModel model;
+    private final int maxBatchSentences;
+    private final int maxRequestBytes;  // longer request bodies are refused with 413.
+    private final long maxBatchDelayNanos;
+    private final BlockingQueue<Request> queue;
+    private final ExecutorService workers;
+    private final Semaphore idleWorkers;  // batches that may be decoding at once
+    private final TaggingMetrics metrics = new TaggingMetrics();
+    private final HttpServer httpServer;
+    private final ExecutorService httpThreads;  // parse requests and write responses
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor that serves a model on a local port with the default batching,
+     * one worker per processor.
+     *
+     * @param model trained model.
+     * @param port  local port, or 0 to pick a free one (see {@link #getPort()}).
+     * @throws IOException checks that the port can be bound.
+     */
+    public TaggingServer(HiddenMarkovModel model, int port) throws IOException {
+        this(model, port, DEFAULT_MAX_BATCH_SENTENCES, DEFAULT_MAX_BATCH_DELAY_MILLIS, DEFAULT_QUEUE_CAPACITY,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor that serves a model on a local port, refusing request bodies over 4 MB.
+     * The server starts right away and runs until {@link #close()}.
+     *
+     * @param model               trained model.
+     * @param port                local port, or 0 to pick a free one (see {@link #getPort()}).
+     * @param maxBatchSentences   most sentences decoded in one batch.
+     * @param maxBatchDelayMillis longest a request waits for a batch to fill up.
+     * @param queueCapacity       most requests waiting; more are rejected.
+     * @param numWorkers          number of worker threads decoding batches.
+     * @throws IOException checks that the port can be bound.
+     */
+    public TaggingServer(HiddenMarkovModel model, int port, int maxBatchSentences, long maxBatchDelayMillis,
+                         int queueCapacity, int numWorkers) throws IOException {
+        this(model, port, maxBatchSentences, maxBatchDelayMillis, queueCapacity, numWorkers, DEFAULT_MAX_REQUEST_BYTES);
+    }
+
+    /**
+     * Constructor that serves a model on a local port. The server starts right away
+     * and runs until {@link #close()}.
+     *
+     * @param model               trained model.
+     * @param port                local port, or 0 to pick a free one (see {@link #getPort()}).
+     * @param maxBatchSentences   most sentences decoded in one batch.
+     * @param maxBatchDelayMillis longest a request waits for a batch to fill up.
+     * @param queueCapacity       most requests waiting; more are rejected.
+     * @param numWorkers          number of worker threads decoding batches.
+     * @param maxRequestBytes     longest request body in bytes, below Integer.MAX_VALUE; longer ones are refused with 413.
+     * @throws IOException checks that the port can be bound.
+     */
+    public TaggingServer(HiddenMarkovModel model, int port, int maxBatchSentences, long maxBatchDelayMillis,
+                         int queueCapacity, int numWorkers, int maxRequestBytes) throws IOException {
+        if (maxBatchSentences < 1 || maxBatchDelayMillis < 0 || queueCapacity < 1 || numWorkers < 1
+                || maxRequestBytes < 1 || maxRequestBytes == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("batch size, queue capacity, workers and request size must be positive");
+        }
+        this.model = model;
+        this.maxBatchSentences = maxBatchSentences;
+        this.maxRequestBytes = maxRequestBytes;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(numWorkers, daemonThreads("hmm-worker"));
+        this.idleWorkers = new Semaphore(numWorkers);
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpThreads = Executors.newFixedThreadPool(2, daemonThreads("hmm-http"));
+        httpServer.setExecutor(httpThreads);
+        httpServer.createContext("/tag", this::handleTag);
+        httpServer.createContext("/metrics", this::handleMetrics);
+
+        dispatcher = daemonThreads("hmm-dispatcher").newThread(this::dispatch);
+        dispatcher.start();
+        httpServer.start();
+    }
+
+    /**
+     * @return port the server listens on.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return counters of the server.
+     */
+    public TaggingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queues sentences to be tagged in the next batch.
+     *
+     * @param sentences sentences, each an array of words.
+     * @return tags of every sentence, in the same order, once they are decoded.
+     * @throws RejectedExecutionException if the queue is full or the server is closed.
+     */
+    public CompletableFuture<List<String[]>> submit(List<String[]> sentences) {
+        Request request = new Request(sentences);
+        if (!running || !queue.offer(request)) {
+            metrics.requestRejected();
+            throw new RejectedExecutionException(running ? "tagging queue is full" : "tagging server is closed");
+        }
+        metrics.requestAccepted();
+        return request.result;
+    }
+
+    /**
+     * Stops accepting requests, tags every request already queued, and stops the threads.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join();
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // a request that raced with closing is failed rather than left waiting.
+        Request late;
+        while ((late = queue.poll()) != null) {
+            late.result.completeExceptionally(new RejectedExecutionException("tagging server is closed"));
+        }
+        httpServer.stop(0);
+        workers.shutdownNow();
+        httpThreads.shutdownNow();
+    }
+
+    /**
+     * Gathers queued requests into batches and hands them to the workers, until the
+     * server is closed and the queue is empty.
+     */
+    private void dispatch() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Request> batch = new ArrayList<>();
+                batch.add(first);
+                int numSentences = first.sentences.size();
+                // the oldest request bounds how long the batch waits to fill up.
+                long deadline = first.queuedNanos + maxBatchDelayNanos;
+                while (numSentences < maxBatchSentences) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    numSentences += next.sentences.size();
+                }
+                // waits for a free worker; meanwhile new requests back up in the queue.
+                idleWorkers.acquire();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            decode(batch);
+                        } finally {
+                            idleWorkers.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    idleWorkers.release();
+                    for (Request request : batch) {
+                        request.result.completeExceptionally(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tags every request of a batch with the model's decoder for this worker thread.
+     *
+     * @param batch requests.
+     */
+    private void decode(List<Request> batch) {
+        long started = System.nanoTime();
+        for (Request request : batch) {
+            try {
+                List<String[]> tags = new ArrayList<>(request.sentences.size());
+                long numTokens = 0;
+                for (String[] words : request.sentences) {
+                    String[] sentenceTags = new String[words.length];
+                    model.tag(words, sentenceTags);
+                    tags.add(sentenceTags);
+                    numTokens += words.length;
+                }
+                metrics.requestCompleted(request.sentences.size(), numTokens, request.queuedNanos, started);
+                request.result.complete(tags);
+            } catch (RuntimeException e) {
+                metrics.requestFailed();
+                request.result.completeExceptionally(e);
+            }
+        }
+        metrics.batchDecoded();
+    }
+
+    /**
+     * Handles POST /tag: one sentence per line in, one line of tags per sentence out.
+     */
+    private void handleTag(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "use POST with one sentence per line\n");
+            return;
+        }
+        // a declared length over the cap is refused before reading; otherwise at most one byte over is read.
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        long declaredBytes;
+        try {
+            declaredBytes = declared == null ? -1 : Long.parseLong(declared.trim());
+        } catch (NumberFormatException e) {
+            metrics.requestFailed();
+            respond(exchange, 400, "Content-Length is not a number: " + declared + "\n");
+            return;
+        }
+        byte[] bytes = declaredBytes > maxRequestBytes ? null : exchange.getRequestBody().readNBytes(maxRequestBytes + 1);
+        if (bytes == null || bytes.length > maxRequestBytes) {
+            metrics.requestFailed();
+            respond(exchange, 413, "request body is longer than " + maxRequestBytes + " bytes\n");
+            return;
+        }
+        String body = new String(bytes, StandardCharsets.UTF_8);
+        List<String[]> sentences = new ArrayList<>();
+        if (!body.isEmpty()) {
+            for (String line : body.split("\r?\n", -1)) {
+                sentences.add(line.isEmpty() ? new String[0] : line.split(" "));
+            }
+            // a final line break ends the last sentence rather than starting another one.
+            if (body.endsWith("\n")) {
+                sentences.remove(sentences.size() - 1);
+            }
+        }
+        CompletableFuture<List<String[]>> tags;
+        try {
+            tags = submit(sentences);
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, e.getMessage() + "\n");
+            return;
+        }
+        // the response is written by whichever thread finishes the batch.
+        tags.whenComplete((result, failure) -> {
+            try {
+                if (failure != null) {
+                    respond(exchange, 500, failure + "\n");
+                } else {
+                    StringBuilder out = new StringBuilder();
+                    for (String[] sentenceTags : result) {
+                        out.append(String.join(" ", sentenceTags)).append('\n');
+                    }
+                    respond(exchange, 200, out.toString());
+                }
+            } catch (IOException e) {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Handles GET /metrics.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, metrics + "queued " + queue.size() + "\n");
+    }
+
+    /**
+     * Writes a plain-text response and closes the exchange.
+     */
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return factory of named daemon threads, so an open server does not keep the JVM alive on its own.
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        ThreadFactory threads = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = threads.newThread(runnable);
+            thread.setName(name + "-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * This program includes one queued request: its sentences, when it was queued,
+     * and the future its tags are delivered through.
+     */
+    private static final class Request {
+        final List<String[]> sentences;
+        final long queuedNanos = System.nanoTime();
+        final CompletableFuture<List<String[]>> result = new CompletableFuture<>();
+
+        Request(List<String[]> sentences) {
+            this.sentences = sentences;
+        }
+    }
+
+    /**
+     * Starts a server on a local port and runs it until the JVM is stopped.
+     * Usage: TaggingServer port model-file, or TaggingServer port tags-file sentences-file.
+     *
+     * @param args port, then a model file saved with {@link HiddenMarkovModel#save(String)}
+     *             or a pair of training files.
+     * @throws IOException checks that the files exist and the port can be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("usage: TaggingServer <port> <model file> | <port> <tags file> <sentences file>");
+            System.exit(2);
+        }
+        HiddenMarkovModel model = args.length == 2 ? HiddenMarkovModel.load(args[1])
+                : new HiddenMarkovModel(args[1], args[2]);
+        TaggingServer server = new TaggingServer(model, Integer.parseInt(args[0]));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.println("Tagging on http://localhost:" + server.getPort() + "/tag, metrics on /metrics");
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
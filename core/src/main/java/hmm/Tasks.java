@@ -0,0 +1,45 @@
+package hmm;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * This program includes waiting for the tasks that training, tagging and
+ * evaluation hand to an executor, so a failure inside a task is rethrown to the
+ * caller as it was thrown.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class Tasks {
+    private Tasks() {
+    }
+
+    /**
+     * Waits for a task and rethrows its failure unchecked.
+     *
+     * @param task task handed to an executor.
+     * @return result of the task.
+     * @throws CancellationException if the waiting thread is interrupted.
+     * @throws CompletionException   wrapping a checked exception thrown by the task.
+     */
+    static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for a task");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+}
@@ -0,0 +1,1177 @@
+package hmm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This program includes the tests.
+ * @author Johan Cruz Hernandez
+ */
+public class Testing {
+
+    /**
+     * Tests the accuracy of Viterbi algorithm using a Hidden Marko Model.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     */
+    public static void performance(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        performance(fileTrainTags, fileTrainSentences, fileTestSentences, fileTestTags, false);
+    }
+
+    /**
+     * Tests the accuracy of Viterbi algorithm using a Hidden Marko Model.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @param unknownWordFeatures score unseen words by shape and suffix instead of the penalty.
+     * @throws IOException checks that file exists.
+     */
+    public static void performance(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags,
+                                   boolean unknownWordFeatures) throws IOException {
+        // instantiate Hidden Markov Model using training files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences, unknownWordFeatures);
+        performance(HMM, fileTestSentences, fileTestTags);
+    }
+
+    /**
+     * Tests the accuracy of Viterbi algorithm using an already trained Hidden Markov Model.
+     * The test files are streamed and scored in parallel, and a tag sequence shorter than
+     * the correct one counts the missing tags as incorrect.
+     * @param HMM trained model.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @return scores and speed.
+     * @throws IOException checks that file exists.
+     */
+    public static Evaluation performance(HiddenMarkovModel HMM, String fileTestSentences, String fileTestTags) throws IOException {
+        Evaluation evaluation = new Evaluator(HMM).evaluate(fileTestSentences, fileTestTags);
+        System.out.println("Correct " + evaluation.getCorrect());
+        System.out.println("Incorrect " + evaluation.getIncorrect());
+        return evaluation;
+    }
+
+    /**
+     * Tests the accuracy on words never seen in training, scored by their shape and
+     * suffix: over all of them, and over the capitalised ones, whose capitalised
+     * shapes are learned from the original case of the words seen once. The brown
+     * files are all lower case, so the test runs on copies with the usual casing put
+     * back: proper nouns (tag NP) and the first word of every sentence capitalised.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     */
+    public static void unknownWordAccuracy(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        // instantiate Hidden Markov Model using cased copies of the training files.
+        List<String> testTags = Files.readAllLines(Paths.get(fileTestTags));
+        List<String> testSentences = Files.readAllLines(casedCopy(fileTestSentences, fileTestTags).toPath());
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, casedCopy(fileTrainSentences, fileTrainTags).getPath(), true);
+        CompiledModel model = HMM.getCompiledModel();
+        int unknown = 0, unknownCorrect = 0, capitalised = 0, capitalisedCorrect = 0;
+        for(int i = 0; i < testSentences.size(); i++) {
+            String[] listOfWords = testSentences.get(i).split(" ");
+            String[] correctTags = testTags.get(i).split(" ");
+            List<String> tags = HMM.Viterbi(listOfWords);
+            for(int j = 0; j < listOfWords.length; j++) {
+                if(!model.isUnknown(model.wordId(listOfWords[j]))) {
+                    continue;
+                }
+                boolean correct = tags.get(j).equals(correctTags[j]);
+                unknown++;
+                unknownCorrect += correct ? 1 : 0;
+                if(Character.isUpperCase(listOfWords[j].charAt(0))) {
+                    capitalised++;
+                    capitalisedCorrect += correct ? 1 : 0;
+                }
+            }
+        }
+        System.out.println(String.format("Unknown words: %d of %d correct (%.2f%%)", unknownCorrect, unknown,
+                100.0 * unknownCorrect / unknown));
+        System.out.println(String.format("Capitalised unknown words: %d of %d correct (%.2f%%)", capitalisedCorrect,
+                capitalised, 100.0 * capitalisedCorrect / capitalised));
+    }
+
+    /**
+     * Writes a copy of a sentence file with proper nouns and the first word of every sentence capitalised.
+     * @param fileSentences text file with sentences.
+     * @param fileTags text file with the tags of the sentences.
+     * @return temporary file with the cased sentences.
+     * @throws IOException checks that files exist.
+     */
+    private static File casedCopy(String fileSentences, String fileTags) throws IOException {
+        List<String> sentences = Files.readAllLines(Paths.get(fileSentences));
+        List<String> tags = Files.readAllLines(Paths.get(fileTags));
+        List<String> cased = new ArrayList<>();
+        for(int i = 0; i < sentences.size(); i++) {
+            String[] listOfWords = sentences.get(i).split(" ");
+            String[] listOfTags = tags.get(i).split(" ");
+            for(int j = 0; j < listOfWords.length; j++) {
+                if((j == 0 || listOfTags[j].equals("NP")) && !listOfWords[j].isEmpty()) {
+                    listOfWords[j] = Character.toUpperCase(listOfWords[j].charAt(0)) + listOfWords[j].substring(1);
+                }
+            }
+            cased.add(String.join(" ", listOfWords));
+        }
+        File file = File.createTempFile("hmm", ".sentences");
+        file.deleteOnExit();
+        Files.write(file.toPath(), cased);
+        return file;
+    }
+
+    /**
+     * Tests the streaming evaluation: accuracy, speed and the tags most often confused.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     */
+    public static void evaluation(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        // instantiate Hidden Markov Model using training files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        Evaluation evaluation = new Evaluator(HMM).evaluate(fileTestSentences, fileTestTags);
+        System.out.println(evaluation);
+        evaluation.writePerTag(System.out, 3);
+    }
+
+    /**
+     * Takes in a line from the console window and returns the POS tags for each word.
+     * @param fileTrainTags training text file with POS tags.
+     * @param fileTrainSentences training text file with sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void readFromConsole(String fileTrainTags, String fileTrainSentences) throws IOException{
+        // instantiate Hidden Markov Model using training files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+
+        // instantiate scanner.
+        Scanner scanner = new Scanner(System.in);
+
+        // stores input from scanner.
+        String line = scanner.nextLine();
+
+        // splits sentence from scanner into a list of words.
+        String[] listOfWords = line.split(" ");
+
+        // pass in list of words into Viterbi
+        System.out.println(HMM.Viterbi(listOfWords));
+    }
+
+    /**
+     * Compares exhaustive Viterbi decoding with the pruning modes, printing accuracy,
+     * how many states and transitions each mode expanded, and how long it took.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     */
+    public static void beamPerformance(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        // instantiate Hidden Markov Model using training files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        CompiledModel compiledModel = HMM.getCompiledModel();
+
+        // reads every test sentence and its tags once.
+        ArrayList<String[]> testSentences = new ArrayList<>();
+        ArrayList<String[]> testTags = new ArrayList<>();
+        BufferedReader inputTestSentences = new BufferedReader(new FileReader(fileTestSentences));
+        BufferedReader inputTestTags = new BufferedReader(new FileReader(fileTestTags));
+        String lineTestSentences;
+        String lineTestTags;
+        while((lineTestSentences = inputTestSentences.readLine()) != null && (lineTestTags = inputTestTags.readLine()) != null) {
+            testSentences.add(lineTestSentences.split(" "));
+            testTags.add(lineTestTags.split(" "));
+        }
+        inputTestSentences.close();
+        inputTestTags.close();
+
+        // decoding modes to compare: exhaustive, emitting tags only, beams of decreasing width.
+        String[] names = {"exhaustive", "emitting tags only", "beam 10", "beam 5", "beam 3",
+                "threshold 10 + emitting tags only"};
+        ViterbiDecoder[] decoders = {new ViterbiDecoder(), new ViterbiDecoder(0, Double.POSITIVE_INFINITY, true),
+                new ViterbiDecoder(10, Double.POSITIVE_INFINITY, false), new ViterbiDecoder(5, Double.POSITIVE_INFINITY, false),
+                new ViterbiDecoder(3, Double.POSITIVE_INFINITY, false), new ViterbiDecoder(0, 10, true)};
+
+        for(int mode = 0; mode < decoders.length; mode++) {
+            ViterbiDecoder decoder = decoders[mode];
+            int correct = 0;
+            int incorrect = 0;
+            long start = System.nanoTime();
+            for(int s = 0; s < testSentences.size(); s++) {
+                String[] listOfWords = testSentences.get(s);
+                String[] listOfTags = testTags.get(s);
+                String[] ViterbiTags = new String[listOfWords.length];
+                decoder.tag(compiledModel, listOfWords, ViterbiTags);
+                for(int i = 0; i < listOfWords.length; i++) {
+                    if(listOfTags[i].equals(ViterbiTags[i])) {
+                        correct += 1;
+                    }
+                    else {
+                        incorrect += 1;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(names[mode] + ": correct " + correct + ", incorrect " + incorrect
+                    + ", states expanded " + decoder.getStatesExpanded()
+                    + ", transitions scored " + decoder.getTransitionsScored()
+                    + ", " + elapsed / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Tests that a model saved to a binary model file and loaded back tags the test
+     * sentences exactly like the model it was saved from: a plain model, one scoring
+     * unknown words by their signatures, and a compact one with a sorted vocabulary.
+     * The loaded models read their tables in place from the mapped file.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void roundTrip(String fileTrainTags, String fileTrainSentences, String fileTestSentences) throws IOException {
+        // instantiate Hidden Markov Models using training files.
+        HiddenMarkovModel plain = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        HiddenMarkovModel features = new HiddenMarkovModel(fileTrainTags, fileTrainSentences, true);
+        HiddenMarkovModel[] models = {plain, features, features.compact(1)};
+        String[] names = {"Plain", "Unknown word features", "Compact"};
+        List<String> lines = Files.readAllLines(Paths.get(fileTestSentences));
+
+        for(int i = 0; i < models.length; i++) {
+            // save the model and load it back from the binary file.
+            File fileModel = File.createTempFile("hmm", ".model");
+            fileModel.deleteOnExit();
+            models[i].save(fileModel.getPath());
+            long start = System.nanoTime();
+            HiddenMarkovModel loaded = HiddenMarkovModel.load(fileModel.getPath());
+            long loadNanos = System.nanoTime() - start;
+
+            // count the sentences where the two models disagree.
+            int same = 0;
+            int different = 0;
+            for(String line : lines) {
+                String[] listOfWords = line.split(" ");
+                if(models[i].Viterbi(listOfWords).equals(loaded.Viterbi(listOfWords))) {
+                    same += 1;
+                }
+                else {
+                    different += 1;
+                }
+            }
+            boolean compact = loaded.getCompiledModel().isCompact();
+            System.out.println(names[i] + ": model file " + fileModel.length() + " bytes, loaded in "
+                    + loadNanos / 1000 + " us, same " + same + ", different " + different + (compact ? ", compact" : ""));
+            if(different != 0) {
+                throw new AssertionError("loaded model tags " + different + " sentences differently");
+            }
+            // a compact model stays compact, so it keeps its size saving across a save and load.
+            if(compact != models[i].getCompiledModel().isCompact()) {
+                throw new AssertionError("loaded model is " + (compact ? "" : "not ") + "compact");
+            }
+        }
+    }
+
+    /**
+     * Tests the tagging server: tags the test sentences over HTTP and checks them
+     * against the model, then runs the load generator against a normal server and
+     * against an overloaded one (small queue, one worker) that has to reject requests.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @throws IOException checks that files exist.
+     * @throws InterruptedException if interrupted while waiting for the server.
+     */
+    public static void serverLoad(String fileTrainTags, String fileTrainSentences, String fileTestSentences) throws IOException, InterruptedException {
+        // instantiate Hidden Markov Model using training files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        List<String> lines = Files.readAllLines(Paths.get(fileTestSentences));
+        ArrayList<String[]> testSentences = new ArrayList<>();
+        for(String line : lines) {
+            testSentences.add(line.split(" "));
+        }
+
+        try (TaggingServer server = new TaggingServer(HMM, 0)) {
+            // tags every test sentence in one request and compares with tagging in-process.
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/tag");
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(String.join("\n", lines))).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            String[] served = response.body().split("\n");
+            int different = 0;
+            for(int s = 0; s < testSentences.size(); s++) {
+                if(s >= served.length || !served[s].equals(String.join(" ", HMM.Viterbi(testSentences.get(s))))) {
+                    different += 1;
+                }
+            }
+            System.out.println("Served " + served.length + " sentences, different " + different);
+            if(response.statusCode() != 200 || different != 0) {
+                throw new AssertionError("server tags " + different + " sentences differently");
+            }
+
+            System.out.println("Load: " + LoadGenerator.run(uri, testSentences, 8, 3000, 1));
+            System.out.print(server.getMetrics());
+        }
+
+        // a request body over the cap is refused with 413, and one within it is still tagged.
+        try (TaggingServer server = new TaggingServer(HMM, 0, 8, 2, 4, 1, 1024)) {
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/tag");
+            HttpClient client = HttpClient.newHttpClient();
+            // the longer body is declared but not sent: the server refuses it unread and closes the
+            // connection, which would reset a client still writing the body.
+            String tooLong = statusLine(server.getPort(), "Content-Length: " + String.join("\n", lines).length());
+            int withinCap = client.send(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(lines.get(0))).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode();
+            // HttpClient will not send a made-up Content-Length, so this request is written by hand.
+            String malformed = statusLine(server.getPort(), "Content-Length: ten");
+            System.out.println("Request over 1024 bytes: " + tooLong + ", one sentence: status " + withinCap
+                    + ", malformed Content-Length: " + malformed);
+            if(tooLong == null || !tooLong.contains(" 413 ") || withinCap != 200 || malformed == null || !malformed.contains(" 400 ")) {
+                throw new AssertionError("request checks answered " + tooLong + ", " + withinCap + " and " + malformed);
+            }
+        }
+
+        // an overloaded server rejects instead of queueing without bound.
+        try (TaggingServer server = new TaggingServer(HMM, 0, 8, 2, 4, 1)) {
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/tag");
+            System.out.println("Overload: " + LoadGenerator.run(uri, testSentences, 32, 2000, 16));
+            System.out.print(server.getMetrics());
+        }
+    }
+
+    /**
+     * Sends the headers of a POST /tag request without its body and reads the status line.
+     * @param port port of the tagging server.
+     * @param header extra header line, e.g. a Content-Length.
+     * @return status line of the response, or null if the connection closed first.
+     * @throws IOException checks that the server can be reached.
+     */
+    private static String statusLine(int port, String header) throws IOException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.getOutputStream().write(("POST /tag HTTP/1.1\r\nHost: localhost\r\n" + header + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+        }
+    }
+
+    /**
+     * Tests that tagging into caller buffers allocates nothing once the decoder is warmed
+     * up: the bytes this thread allocates are read before and after tagging every test
+     * sentence, both as tag ids and as tag strings.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void taggingAllocation(String fileTrainTags, String fileTrainSentences, String fileTestSentences) throws IOException {
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        List<String[]> testSentences = new ArrayList<>();
+        int longest = 0;
+        for(String line : Files.readAllLines(Paths.get(fileTestSentences))) {
+            String[] words = line.split(" ");
+            testSentences.add(words);
+            longest = Math.max(longest, words.length);
+        }
+        int[] tagIds = new int[longest];
+        String[] tags = new String[longest];
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // warms up the decoder buffers, the unknown word cache and the compiled code.
+        for(int pass = 0; pass < 20; pass++) {
+            tagEvery(HMM, testSentences, tagIds, tags);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        tagEvery(HMM, testSentences, tagIds, tags);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        System.out.println("Tagged " + testSentences.size() + " sentences twice into caller buffers: "
+                + allocated + " bytes allocated");
+        if(allocated != 0) {
+            throw new AssertionError("tagging into caller buffers allocated " + allocated + " bytes");
+        }
+    }
+
+    /**
+     * Tags every sentence into the same buffers, as tag ids and then as tag strings.
+     */
+    private static void tagEvery(HiddenMarkovModel HMM, List<String[]> sentences, int[] tagIds, String[] tags) {
+        for(int i = 0; i < sentences.size(); i++) {
+            HMM.tag(sentences.get(i), tagIds);
+            HMM.tag(sentences.get(i), tags);
+        }
+    }
+
+    /**
+     * Tests batch tagging: the test sentences are tagged one by one, with
+     * {@link BatchTagger#tagAll(List)} and with {@link BatchTagger#tagStream(java.util.stream.Stream)}
+     * on four threads in chunks of 7 sentences, and all three must give the same tags in the
+     * same order. Closing the tagged stream must close the source, and empty input must work.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void batchTagging(String fileTrainTags, String fileTrainSentences, String fileTestSentences) throws IOException {
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        List<String[]> testSentences = new ArrayList<>();
+        List<String> sequential = new ArrayList<>();
+        for(String line : Files.readAllLines(Paths.get(fileTestSentences))) {
+            String[] words = line.split(" ");
+            testSentences.add(words);
+            sequential.add(String.join(" ", HMM.Viterbi(words)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchTagger tagger = new BatchTagger(HMM, executor, 7);
+            List<String> all = new ArrayList<>();
+            for(String[] tags : tagger.tagAll(testSentences)) {
+                all.add(String.join(" ", tags));
+            }
+            boolean[] sourceClosed = {false};
+            List<String> streamed = new ArrayList<>();
+            try(Stream<String[]> tagged = tagger.tagStream(testSentences.stream().onClose(() -> sourceClosed[0] = true))) {
+                tagged.forEach(tags -> streamed.add(String.join(" ", tags)));
+            }
+            boolean emptyWorks = tagger.tagAll(new ArrayList<>()).isEmpty() && tagger.tagStream(Stream.empty()).count() == 0;
+
+            System.out.println("Tagged " + sequential.size() + " sentences: tagAll " + (all.equals(sequential) ? "same" : "different")
+                    + ", tagStream " + (streamed.equals(sequential) ? "same" : "different") + ", source closed " + sourceClosed[0]
+                    + ", empty input " + (emptyWorks ? "works" : "fails"));
+            if(!all.equals(sequential) || !streamed.equals(sequential) || !sourceClosed[0] || !emptyWorks) {
+                throw new AssertionError("batch tagging does not match tagging one sentence at a time");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests the JMX metrics: evaluates a model and reads the decode and training
+     * metrics back from the platform MBean server. Metrics are only recorded when
+     * the JVM runs with -Dhmm.metrics=true.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     * @throws JMException if the metrics are not registered.
+     */
+    public static void jmxMetrics(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException, JMException {
+        if(!ModelMetrics.ENABLED) {
+            System.out.println("Metrics are off; run with -Dhmm.metrics=true to record them.");
+            return;
+        }
+        ModelMetrics.get().reset();
+
+        // instantiate Hidden Markov Model using training files and tag the test files.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        Evaluation evaluation = new Evaluator(HMM).evaluate(fileTestSentences, fileTestTags);
+
+        // reads the metrics the way a JMX client would.
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("hmm:type=ModelMetrics");
+        long sentences = (Long) server.getAttribute(name, "Sentences");
+        System.out.println("JMX sentences " + sentences + ", unknown word rate " + server.getAttribute(name, "UnknownWordRate")
+                + ", states expanded per token " + server.getAttribute(name, "StatesExpandedPerToken"));
+        System.out.print(ModelMetrics.get());
+        if(sentences != evaluation.getSentences()) {
+            throw new AssertionError("JMX reports " + sentences + " sentences, " + evaluation.getSentences() + " were tagged");
+        }
+
+        // tagging with confidence and computing posteriors are recorded too.
+        String[] words = Files.readAllLines(Paths.get(fileTestSentences)).get(0).split(" ");
+        HMM.tag(words, new int[words.length], new double[words.length]);
+        HMM.posteriors(words);
+        long denseSentences = (Long) server.getAttribute(name, "Sentences") - sentences;
+        System.out.println("JMX sentences tagged with confidence or posteriors " + denseSentences);
+        if(denseSentences != 2) {
+            throw new AssertionError("JMX reports " + denseSentences + " dense decodes, 2 were run");
+        }
+    }
+
+    /**
+     * Tests compact models: heap taken by the original map-of-maps tables, by a
+     * compiled model and by compact models pruned at increasing counts, and the
+     * accuracy each one loses on the test files.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that file exists.
+     */
+    public static void compactModel(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        // heap taken by the observation and transition maps.
+        long base = usedHeap();
+        Map<String, Map<String, Double>> observations = HiddenMarkovModel.loadFileToMapObservations(fileTrainTags, fileTrainSentences);
+        Map<String, Map<String, Double>> transitions = HiddenMarkovModel.loadFileToMapTransitions(fileTrainTags);
+        long mapBytes = usedHeap() - base;
+        System.out.println("Maps: heap " + mapBytes / 1024 + " KB (" + observations.size() + " + " + transitions.size() + " rows)");
+        observations = null;
+        transitions = null;
+
+        // heap taken by a compiled model without its training counts.
+        File fileModel = File.createTempFile("hmm", ".model");
+        fileModel.deleteOnExit();
+        new HiddenMarkovModel(fileTrainTags, fileTrainSentences).save(fileModel.getPath());
+        base = usedHeap();
+        HiddenMarkovModel compiled = HiddenMarkovModel.load(fileModel.getPath());
+        long compiledBytes = usedHeap() - base;
+        Evaluation exact = new Evaluator(compiled).evaluate(fileTestSentences, fileTestTags);
+        System.out.println("Compiled: heap " + compiledBytes / 1024 + " KB, estimated "
+                + compiled.getCompiledModel().estimatedBytes() / 1024 + " KB, "
+                + String.format("accuracy %.4f%%", 100 * exact.getAccuracy()));
+
+        // heap taken by compact models, pruning emissions seen fewer than minCount times.
+        for(int minCount = 1; minCount <= 3; minCount++) {
+            base = usedHeap();
+            HiddenMarkovModel compact = new HiddenMarkovModel(fileTrainTags, fileTrainSentences).compact(minCount);
+            long compactBytes = usedHeap() - base;
+            Evaluation evaluation = new Evaluator(compact).evaluate(fileTestSentences, fileTestTags);
+            System.out.println("Compact, min count " + minCount + ": heap " + compactBytes / 1024 + " KB, estimated "
+                    + compact.getCompiledModel().estimatedBytes() / 1024 + " KB, "
+                    + compact.getCompiledModel().numWords() + " words, "
+                    + String.format("accuracy %.4f%% (%+.4f), step %.2e", 100 * evaluation.getAccuracy(),
+                    100 * (evaluation.getAccuracy() - exact.getAccuracy()), compact.getCompiledModel().getQuantizationStep()));
+        }
+    }
+
+    /**
+     * @return bytes of heap in use after asking for garbage collection.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Tests the dense decoder on the test sentences: its Viterbi tags must match the
+     * exhaustive Viterbi tags, and its posteriors must sum to 1 and match a plain
+     * log-sum-exp forward-backward. Also compares the accuracy of the most probable
+     * tag at each word, the confidence of right and wrong tags, and the time taken.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that files exist.
+     */
+    public static void denseDecoding(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        List<String[]> testSentences = new ArrayList<>();
+        List<String[]> testTags = new ArrayList<>();
+        for(String line : Files.readAllLines(Paths.get(fileTestSentences))) {
+            testSentences.add(line.split(" "));
+        }
+        for(String line : Files.readAllLines(Paths.get(fileTestTags))) {
+            testTags.add(line.split(" "));
+        }
+        System.out.println("Kernels: " + DenseDecoder.kernels());
+
+        // the dense Viterbi tags must be the exhaustive Viterbi tags, with and without unknown word features.
+        for(boolean unknownWordFeatures : new boolean[]{false, true}) {
+            HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences, unknownWordFeatures);
+            CompiledModel compiledModel = HMM.getCompiledModel();
+            DenseDecoder dense = new DenseDecoder();
+            int differentSentences = 0;
+            double worstSum = 0;
+            double worstDifference = 0;
+            for(int s = 0; s < testSentences.size(); s++) {
+                String[] listOfWords = testSentences.get(s);
+                String[] denseTags = new String[listOfWords.length];
+                dense.tag(compiledModel, listOfWords, denseTags);
+                if(!HMM.Viterbi(listOfWords).equals(Arrays.asList(denseTags))) {
+                    differentSentences++;
+                }
+                double[][] posteriors = dense.posteriors(compiledModel, listOfWords);
+                for(double[] posterior : posteriors) {
+                    worstSum = Math.max(worstSum, Math.abs(Arrays.stream(posterior).sum() - 1));
+                }
+                // the plain forward-backward is slow, so only the first sentences are compared.
+                if(s < 500) {
+                    double[][] expected = logSumExpPosteriors(compiledModel, listOfWords);
+                    for(int i = 0; i < listOfWords.length; i++) {
+                        for(int tag = 0; tag < compiledModel.numTags(); tag++) {
+                            worstDifference = Math.max(worstDifference, Math.abs(posteriors[i][tag] - expected[i][tag]));
+                        }
+                    }
+                }
+            }
+            System.out.println((unknownWordFeatures ? "With" : "Without") + " unknown word features: "
+                    + differentSentences + " sentences tagged differently from Viterbi, "
+                    + "largest |posterior sum - 1| " + worstSum
+                    + ", largest difference from log-sum-exp forward-backward " + worstDifference);
+        }
+
+        // accuracy of the Viterbi path against the most probable tag at each word, and how confident each is.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        CompiledModel compiledModel = HMM.getCompiledModel();
+        DenseDecoder dense = new DenseDecoder();
+        int viterbiCorrect = 0;
+        int posteriorCorrect = 0;
+        int words = 0;
+        double confidenceCorrect = 0;
+        double confidenceIncorrect = 0;
+        for(int s = 0; s < testSentences.size(); s++) {
+            String[] listOfWords = testSentences.get(s);
+            String[] listOfTags = testTags.get(s);
+            int[] tagIds = new int[listOfWords.length];
+            double[] confidence = new double[listOfWords.length];
+            dense.tag(compiledModel, listOfWords, tagIds, confidence);
+            double[][] posteriors = dense.posteriors(compiledModel, listOfWords);
+            for(int i = 0; i < listOfWords.length; i++) {
+                int best = 0;
+                for(int tag = 1; tag < compiledModel.numTags(); tag++) {
+                    if(posteriors[i][tag] > posteriors[i][best]) {
+                        best = tag;
+                    }
+                }
+                if(compiledModel.tag(best).equals(listOfTags[i])) {
+                    posteriorCorrect++;
+                }
+                if(compiledModel.tag(tagIds[i]).equals(listOfTags[i])) {
+                    viterbiCorrect++;
+                    confidenceCorrect += confidence[i];
+                }
+                else {
+                    confidenceIncorrect += confidence[i];
+                }
+                words++;
+            }
+        }
+        System.out.println("Viterbi path: correct " + viterbiCorrect + ", incorrect " + (words - viterbiCorrect)
+                + String.format(", mean confidence %.3f when right, %.3f when wrong",
+                confidenceCorrect / viterbiCorrect, confidenceIncorrect / (words - viterbiCorrect)));
+        System.out.println("Most probable tag per word: correct " + posteriorCorrect + ", incorrect " + (words - posteriorCorrect));
+
+        // best of several passes over the test sentences, so the JIT has warmed up.
+        String[] names = {"Viterbi decoder", "dense Viterbi", "posteriors", "Viterbi + confidence"};
+        ViterbiDecoder decoder = new ViterbiDecoder();
+        for(int mode = 0; mode < names.length; mode++) {
+            long best = Long.MAX_VALUE;
+            for(int pass = 0; pass < 5; pass++) {
+                long start = System.nanoTime();
+                for(String[] listOfWords : testSentences) {
+                    int[] tagIds = new int[listOfWords.length];
+                    if(mode == 0) {
+                        decoder.tag(compiledModel, listOfWords, tagIds);
+                    }
+                    else if(mode == 1) {
+                        dense.tag(compiledModel, listOfWords, tagIds);
+                    }
+                    else if(mode == 2) {
+                        dense.posteriors(compiledModel, listOfWords);
+                    }
+                    else {
+                        dense.tag(compiledModel, listOfWords, tagIds, new double[listOfWords.length]);
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(names[mode] + ": " + best / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Computes posteriors by forward-backward in log space, with a log-sum-exp over
+     * every (state, successor) pair, as a reference for {@link DenseDecoder}.
+     * @param compiledModel compiled model.
+     * @param words array of words.
+     * @return [word][tag id] -> posterior probability.
+     */
+    private static double[][] logSumExpPosteriors(CompiledModel compiledModel, String[] words) {
+        int numTags = compiledModel.numTags();
+        double[] transitions = compiledModel.transitions();
+        double[][] emissions = new double[words.length][numTags];
+        for(int i = 0; i < words.length; i++) {
+            int word = compiledModel.wordId(words[i]);
+            if(compiledModel.isUnknown(word)) {
+                emissions[i] = compiledModel.getUnknownWords().emissions(words[i]).clone();
+            }
+            else {
+                compiledModel.emissions(word, emissions[i]);
+            }
+        }
+        double[][] forward = new double[words.length][numTags];
+        double[][] backward = new double[words.length][numTags];
+        double[] terms = new double[numTags];
+        for(int i = 0; i < words.length; i++) {
+            for(int tag = 0; tag < numTags; tag++) {
+                for(int state = 0; state < numTags; state++) {
+                    terms[state] = i == 0 ? (state == CompiledModel.START ? 0 : Double.NEGATIVE_INFINITY)
+                            : forward[i - 1][state];
+                    terms[state] += transitions[state * numTags + tag];
+                }
+                forward[i][tag] = logSumExp(terms) + emissions[i][tag];
+            }
+        }
+        for(int i = words.length - 2; i >= 0; i--) {
+            for(int state = 0; state < numTags; state++) {
+                for(int tag = 0; tag < numTags; tag++) {
+                    terms[tag] = transitions[state * numTags + tag] + emissions[i + 1][tag] + backward[i + 1][tag];
+                }
+                backward[i][state] = logSumExp(terms);
+            }
+        }
+        double[][] posteriors = new double[words.length][numTags];
+        for(int i = 0; i < words.length; i++) {
+            for(int tag = 0; tag < numTags; tag++) {
+                terms[tag] = forward[i][tag] + backward[i][tag];
+            }
+            double total = logSumExp(terms);
+            for(int tag = 0; tag < numTags; tag++) {
+                posteriors[i][tag] = Math.exp(terms[tag] - total);
+            }
+        }
+        return posteriors;
+    }
+
+    /**
+     * @return log of the sum of exp of the values, -Infinity if every value is.
+     */
+    private static double logSumExp(double[] values) {
+        double max = Double.NEGATIVE_INFINITY;
+        for(double value : values) {
+            max = Math.max(max, value);
+        }
+        if(max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for(double value : values) {
+            sum += Math.exp(value - max);
+        }
+        return max + Math.log(sum);
+    }
+
+    /**
+     * Tests Baum-Welch training: starts from a model trained on the tagged training
+     * files, runs iterations over the training sentences as if they were untagged,
+     * and reports the log-probability, speed and test accuracy of every iteration,
+     * with and without the tagged counts. Then checks that training picks up from
+     * its checkpoints.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences, also used untagged.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that files exist.
+     */
+    public static void baumWelch(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        HiddenMarkovModel supervised = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        Evaluation start = new Evaluator(supervised).evaluate(fileTestSentences, fileTestTags);
+        System.out.println(String.format("Supervised: accuracy %.4f%%", 100 * start.getAccuracy()));
+
+        File checkpoints = Files.createTempDirectory("hmm-baum-welch").toFile();
+        for(double supervisedWeight : new double[]{1, 0}) {
+            System.out.println("Supervised weight " + supervisedWeight + ":");
+            BaumWelchTrainer trainer = new BaumWelchTrainer(supervised, supervisedWeight, ForkJoinPool.commonPool());
+            String directory = supervisedWeight > 0 ? checkpoints.getPath() : null;
+            trainer.train(fileTrainSentences, 3, directory, iteration -> {
+                try {
+                    Evaluation evaluation = new Evaluator(iteration.getModel()).evaluate(fileTestSentences, fileTestTags);
+                    System.out.println(iteration + String.format(", accuracy after %.4f%%", 100 * evaluation.getAccuracy()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        // asking for one more iteration only runs the fourth, starting from the third checkpoint.
+        List<Integer> run = new ArrayList<>();
+        new BaumWelchTrainer(supervised).train(fileTrainSentences, 4, checkpoints.getPath(),
+                iteration -> run.add(iteration.getNumber()));
+        System.out.println("Resumed from checkpoints, ran iterations " + run);
+        for(File checkpoint : checkpoints.listFiles()) {
+            checkpoint.delete();
+        }
+        checkpoints.delete();
+    }
+
+    /**
+     * Tests recompiling a model while sentences are added: the test sentences are added
+     * to a model trained on the training files ten at a time, decoding after each batch
+     * so the model recompiles, and the result must tag like a model trained on both at
+     * once. Reports the time of a recompile next to compiling every row.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @param fileTestSentences text file with test sentences.
+     * @param fileTestTags text file with test tags.
+     * @throws IOException checks that files exist.
+     */
+    public static void incrementalCompile(String fileTrainTags, String fileTrainSentences, String fileTestSentences, String fileTestTags) throws IOException {
+        // instantiate Hidden Markov Model using training files, then add the test sentences.
+        HiddenMarkovModel HMM = new HiddenMarkovModel(fileTrainTags, fileTrainSentences);
+        List<String> testSentences = Files.readAllLines(Paths.get(fileTestSentences));
+        List<String> testTags = Files.readAllLines(Paths.get(fileTestTags));
+        long recompileNanos = 0;
+        int recompiles = 0;
+        for(int i = 0; i < testSentences.size(); i++) {
+            HMM.addSentence(testSentences.get(i).split(" "), testTags.get(i).split(" "));
+            if(i % 10 == 9 || i == testSentences.size() - 1) {
+                long start = System.nanoTime();
+                HMM.getCompiledModel();
+                recompileNanos += System.nanoTime() - start;
+                recompiles++;
+            }
+        }
+
+        // a model trained on the training and test files at once.
+        File fileTags = File.createTempFile("hmm", ".tags");
+        File fileSentences = File.createTempFile("hmm", ".sentences");
+        fileTags.deleteOnExit();
+        fileSentences.deleteOnExit();
+        List<String> tags = new ArrayList<>(Files.readAllLines(Paths.get(fileTrainTags)));
+        List<String> sentences = new ArrayList<>(Files.readAllLines(Paths.get(fileTrainSentences)));
+        tags.addAll(testTags);
+        sentences.addAll(testSentences);
+        Files.write(fileTags.toPath(), tags);
+        Files.write(fileSentences.toPath(), sentences);
+        HiddenMarkovModel whole = new HiddenMarkovModel(fileTags.getPath(), fileSentences.getPath());
+        // the fastest of a few, so the compiler has warmed up like it has for the recompiles.
+        long compileNanos = Long.MAX_VALUE;
+        for(int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            CompiledModel.compile(whole.getCounts(), null, false);
+            compileNanos = Math.min(compileNanos, System.nanoTime() - start);
+        }
+
+        // count the sentences where the two models disagree.
+        int different = 0;
+        for(String line : testSentences) {
+            String[] listOfWords = line.split(" ");
+            if(!HMM.Viterbi(listOfWords).equals(whole.Viterbi(listOfWords))) {
+                different += 1;
+            }
+        }
+        System.out.println(recompiles + " recompiles, " + recompileNanos / recompiles / 1000 + " us each; compiling every row "
+                + compileNanos / 1000 + " us; different " + different);
+        if(different != 0) {
+            throw new AssertionError("recompiled model tags " + different + " sentences differently");
+        }
+    }
+
+    /**
+     * Tests reading the training files mapped in small windows, so many lines and
+     * tokens cross from one window into the next: the counts must be the same as
+     * when each file fits in one window.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void corpusWindows(String fileTrainTags, String fileTrainSentences) throws IOException {
+        CorpusCounts whole = countChunks(new CorpusReader(fileTrainTags, fileTrainSentences));
+        for(int windowShift : new int[]{12, 16}) {
+            CorpusCounts windowed = countChunks(new CorpusReader(fileTrainTags, fileTrainSentences, windowShift));
+            boolean same = windowed.getTokens() == whole.getTokens() && windowed.getSentences() == whole.getSentences()
+                    && windowed.observationFrequencies().equals(whole.observationFrequencies())
+                    && windowed.transitionFrequencies().equals(whole.transitionFrequencies());
+            System.out.println("Windows of " + (1 << windowShift) + " bytes: " + windowed.getTokens() + " tokens, "
+                    + (same ? "same counts" : "different counts"));
+            if(!same) {
+                throw new AssertionError("counts read in windows of " + (1 << windowShift) + " bytes differ");
+            }
+        }
+    }
+
+    /**
+     * Tests that the corpus reader splits lines into the same tokens as line.split(" "),
+     * which the decoding paths use: lines with runs of spaces, leading and trailing spaces,
+     * and empty lines are counted through the reader and through split(" ").
+     * @throws IOException checks that the temporary files can be written.
+     */
+    public static void corpusTokens() throws IOException {
+        List<String> sentences = Arrays.asList("the  dog barks", " a cat", "it runs ", "", "one   two", "   ");
+        List<String> tags = Arrays.asList("DET  N V", " DET N", "PRO V ", "", "NUM   NUM", "   ");
+        File fileTags = File.createTempFile("hmm", ".tags");
+        File fileSentences = File.createTempFile("hmm", ".sentences");
+        fileTags.deleteOnExit();
+        fileSentences.deleteOnExit();
+        Files.write(fileTags.toPath(), tags);
+        Files.write(fileSentences.toPath(), sentences);
+
+        CorpusCounts read = countChunks(new CorpusReader(fileTags.getPath(), fileSentences.getPath()));
+        CorpusCounts split = new CorpusCounts();
+        for(int i = 0; i < sentences.size(); i++) {
+            split.addSentence(sentences.get(i).split(" "), tags.get(i).split(" "));
+        }
+        boolean same = read.getTokens() == split.getTokens()
+                && read.observationFrequencies().equals(split.observationFrequencies())
+                && read.transitionFrequencies().equals(split.transitionFrequencies());
+        System.out.println("Reader: " + read.getTokens() + " tokens, split(\" \"): " + split.getTokens() + " tokens, "
+                + (same ? "same counts" : "different counts"));
+        if(!same) {
+            throw new AssertionError("the corpus reader and split(\" \") count different tokens");
+        }
+    }
+
+    /**
+     * Tests that counting does not depend on how the corpus is split up: counts made on
+     * one thread and on several, and from chunks of different sizes, must be identical.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void countingSplits(String fileTrainTags, String fileTrainSentences) throws IOException {
+        CorpusCounts expected;
+        CorpusCounts threaded;
+        ExecutorService oneThread = Executors.newSingleThreadExecutor();
+        ExecutorService fourThreads = Executors.newFixedThreadPool(4);
+        try {
+            expected = HiddenMarkovModel.loadFileToCounts(fileTrainTags, fileTrainSentences, oneThread);
+            threaded = HiddenMarkovModel.loadFileToCounts(fileTrainTags, fileTrainSentences, fourThreads);
+        } finally {
+            oneThread.shutdown();
+            fourThreads.shutdown();
+        }
+        checkSameCounts("4 threads", threaded, expected);
+        for(int chunkLines : new int[]{1, 7, 1000, Integer.MAX_VALUE}) {
+            checkSameCounts("chunks of " + chunkLines + " lines",
+                    countChunks(new CorpusReader(fileTrainTags, fileTrainSentences), chunkLines), expected);
+        }
+    }
+
+    /**
+     * Checks that counts made another way equal the expected counts.
+     * @param way how the counts were made, for the report.
+     * @param counts counts made that way.
+     * @param expected counts made on one thread.
+     */
+    private static void checkSameCounts(String way, CorpusCounts counts, CorpusCounts expected) {
+        boolean same = counts.getTokens() == expected.getTokens() && counts.getSentences() == expected.getSentences()
+                && counts.observationFrequencies().equals(expected.observationFrequencies())
+                && counts.transitionFrequencies().equals(expected.transitionFrequencies());
+        System.out.println("Counting with " + way + ": " + counts.getTokens() + " tokens, "
+                + (same ? "same counts" : "different counts"));
+        if(!same) {
+            throw new AssertionError("counting with " + way + " gives different counts than one thread");
+        }
+    }
+
+    /**
+     * Tests that the one-pass counts normalise to the same probabilities as the original
+     * loaders, which reset the count of a word with capitals to 1 each time it repeated
+     * under a tag. The training files are read with both, so this fails on any file
+     * where that difference changes a probability.
+     * @param fileTrainTags text file with training tags.
+     * @param fileTrainSentences text file with training sentences.
+     * @throws IOException checks that files exist.
+     */
+    public static void originalLoaders(String fileTrainTags, String fileTrainSentences) throws IOException {
+        CorpusCounts counts = HiddenMarkovModel.loadFileToCounts(fileTrainTags, fileTrainSentences);
+        boolean sameObservations = HiddenMarkovModel.getMapProbabilities(counts.observationFrequencies())
+                .equals(HiddenMarkovModel.loadFileToMapObservations(fileTrainTags, fileTrainSentences));
+        boolean sameTransitions = HiddenMarkovModel.getMapProbabilities(counts.transitionFrequencies())
+                .equals(HiddenMarkovModel.loadFileToMapTransitions(fileTrainTags));
+        System.out.println(fileTrainSentences + ": observations " + (sameObservations ? "same" : "different")
+                + ", transitions " + (sameTransitions ? "same" : "different") + " as the original loaders");
+        if(!sameObservations || !sameTransitions) {
+            throw new AssertionError(fileTrainSentences + " is counted differently than by the original loaders");
+        }
+    }
+
+    /**
+     * Counts every chunk of a reader on this thread and merges the counts.
+     * @param reader reader of the training files.
+     * @return merged counts.
+     */
+    private static CorpusCounts countChunks(CorpusReader reader) {
+        return countChunks(reader, 1000);
+    }
+
+    /**
+     * Counts every chunk of a reader on this thread and merges the counts.
+     * @param reader reader of the training files.
+     * @param chunkLines most lines in a chunk.
+     * @return merged counts.
+     */
+    private static CorpusCounts countChunks(CorpusReader reader, int chunkLines) {
+        CorpusCounts counts = new CorpusCounts();
+        CorpusReader.Chunk chunk;
+        while((chunk = reader.nextChunk(chunkLines)) != null) {
+            chunk.count().mergeInto(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Runs the checks of the decoders, training, model files, batch tagging and the
+     * tagging server. They take about a minute and need no input, unlike {@link #main(String[])}.
+     * @throws IOException checks that files exist.
+     */
+    public static void checks() throws IOException {
+        // comparing exhaustive and pruned Viterbi decoding.
+        System.out.println("Testing pruned decoding modes using brown training files and brown testing files.");
+        beamPerformance("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing performance when unseen words are scored by their shape and suffix.
+        System.out.println("Testing performance with unknown word features using brown training files and brown testing files.");
+        performance("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt", true);
+        unknownWordAccuracy("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing Baum-Welch training on the training sentences without their tags.
+        System.out.println("Testing Baum-Welch training using brown training files and brown testing files.");
+        baumWelch("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // checking the dense decoder and its posteriors against Viterbi.
+        System.out.println("Testing dense decoding and posteriors using brown training files and brown testing files.");
+        denseDecoding("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // comparing the heap and accuracy of compiled and compact models.
+        System.out.println("Testing compact models using brown training files and brown testing files.");
+        compactModel("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing the JMX metrics (recorded with -Dhmm.metrics=true).
+        System.out.println("Testing JMX metrics using brown training files and brown testing files.");
+        try {
+            jmxMetrics("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                    "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println("\n");
+
+        // testing the streaming evaluation with speed and per-tag confusions.
+        System.out.println("Testing the streaming evaluation using brown training files and brown testing files.");
+        evaluation("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing that steady-state tagging into caller buffers allocates nothing.
+        System.out.println("Testing allocation while tagging using brown training files and brown testing files.");
+        taggingAllocation("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt", "texts/brown-test-sentences.txt");
+        System.out.println("\n");
+
+        // testing that batch tagging keeps the input order across chunks.
+        System.out.println("Testing batch tagging using brown training files and brown testing files.");
+        batchTagging("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt", "texts/brown-test-sentences.txt");
+        System.out.println("\n");
+
+        // testing the tagging server under load.
+        System.out.println("Testing the tagging server using brown training files and brown testing files.");
+        try {
+            serverLoad("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt", "texts/brown-test-sentences.txt");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("\n");
+
+        // testing that the training files read in small windows count the same.
+        System.out.println("Testing reading the corpus in mapped windows using brown training files.");
+        corpusWindows("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt");
+        corpusTokens();
+        System.out.println("\n");
+
+        // testing that counts do not depend on threads or chunk sizes, and match the original loaders.
+        System.out.println("Testing counting split across threads and chunks using brown training files.");
+        countingSplits("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt");
+        originalLoaders("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt");
+        originalLoaders("texts/simple-train-tags.txt", "texts/simple-train-sentences.txt");
+        originalLoaders("texts/PD-train-tags", "texts/PD-train-sentences");
+        System.out.println("\n");
+
+        // testing that a model recompiled as sentences are added tags like one trained at once.
+        System.out.println("Testing recompiling while sentences are added using brown training files and brown testing files.");
+        incrementalCompile("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing that a saved and loaded model tags like the trained one.
+        System.out.println("Testing a binary model file round trip using brown training files and brown testing files.");
+        roundTrip("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt", "texts/brown-test-sentences.txt");
+        System.out.println("\n");
+    }
+
+    /**
+     * Runs the original tests, including the console test, which waits for sentences to
+     * be typed; with the argument "checks" it runs {@link #checks()} instead.
+     * @param args nothing, or "checks".
+     * @throws IOException checks that files exist.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("checks")) {
+            checks();
+            return;
+        }
+
+        // testing performance using hard-coded emission and transition maps.
+        System.out.println("This is a test using hard-coded emission and transition maps to train HMM. ");
+        System.out.println("The result of this performance is based on brown test files.");
+        performance("texts/PD-train-tags", "texts/PD-train-sentences",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // reading from console using brown-train-tags and brown-train-sentences.
+        System.out.println("This is a console based test using brown training files");
+        System.out.println("Write sentence into the console.");
+        readFromConsole("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt");
+        System.out.println("\n");
+
+        // testing performance using brown training files and brown testing files.
+        // the sample solution got 35,109 right vs. 1285 wrong for brown.
+        System.out.println("Testing performance using brown training files and brown testing files.");
+        performance("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/brown-test-sentences.txt", "texts/brown-test-tags.txt");
+        System.out.println("\n");
+
+        // testing performance using simple training files and sample test files.
+        // the sample solution got 32 tags right and 5 wrong for simple.
+        System.out.println("Testing performance using simple training files and simple test files.");
+        performance("texts/simple-train-tags.txt", "texts/simple-train-sentences.txt",
+                "texts/simple-test-sentences.txt", "texts/simple-test-tags.txt");
+        System.out.println("\n");
+
+        // testing performance using simple training files and example test files.
+        System.out.println("Testing performance using simple training files and example test files.");
+        performance("texts/simple-train-tags.txt", "texts/simple-train-sentences.txt",
+                "texts/example-sentences.txt", "texts/example-tags.txt");
+        System.out.println("\n");
+
+        // testing performance using brown training files and example test files.
+        System.out.println("Testing performance using brown training files and example test files.");
+        performance("texts/brown-train-tags.txt", "texts/brown-train-sentences.txt",
+                "texts/example-sentences.txt", "texts/example-tags.txt");
+        System.out.println("\n");
+    }
+}
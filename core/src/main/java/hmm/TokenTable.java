@@ -0,0 +1,151 @@
+package hmm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This program includes an open-addressing table that interns tokens given as
+ * byte ranges of a buffer (e.g. a memory-mapped corpus file) to dense int ids,
+ * starting at 0 in the order they are first added. A token that is already in
+ * the table is looked up by hashing and comparing its bytes, so no String is
+ * created for it.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class TokenTable {
+    private static final int EMPTY = -1;  // marks an unused slot.
+
+    private int[] slots;  // slot -> token id
+    private int[] hashes;  // token id -> hash of its bytes
+    private int[] offsets;  // token id -> start of its bytes; offsets[id + 1] is the end
+    private byte[] bytes;  // bytes of every token, one after the other
+    private int size;  // number of tokens.
+
+    TokenTable() {
+        slots = new int[64];
+        Arrays.fill(slots, EMPTY);
+        hashes = new int[32];
+        offsets = new int[33];
+        bytes = new byte[256];
+    }
+
+    /**
+     * Interns the token in buffer[start, end).
+     *
+     * @param buffer buffer holding the token; only read with absolute gets.
+     * @param start  index of the first byte.
+     * @param end    index after the last byte.
+     * @return id of the token, {@link #size()} before the call if it is new.
+     */
+    int add(ByteBuffer buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY) {
+            int id = slots[slot];
+            if (hashes[id] == hash && equal(id, buffer, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = append(buffer, start, end, hash);
+        slots[slot] = id;
+        // keep the table at most half full.
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @param id token id.
+     * @return the token decoded as UTF-8.
+     */
+    String get(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Interns a token of another table, e.g. to resolve the tokens of separately
+     * tokenised chunks against one table.
+     *
+     * @param other table holding the token.
+     * @param id    id of the token in other.
+     * @return id of the token here, {@link #size()} before the call if it is new.
+     */
+    int add(TokenTable other, int id) {
+        return add(ByteBuffer.wrap(other.bytes), other.offsets[id], other.offsets[id + 1]);
+    }
+
+    /**
+     * @return number of tokens.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * FNV-1a hash of buffer[start, end), mixed so the low bits are usable as a slot.
+     */
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Checks whether a stored token has the same bytes as buffer[start, end).
+     */
+    private boolean equal(int id, ByteBuffer buffer, int start, int end) {
+        int offset = offsets[id];
+        if (offsets[id + 1] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[offset++] != buffer.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the bytes and hash of a new token.
+     */
+    private int append(ByteBuffer buffer, int start, int end, int hash) {
+        int id = size++;
+        if (id + 1 == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        int offset = offsets[id];
+        int length = end - start;
+        if (offset + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + length));
+        }
+        buffer.get(start, bytes, offset, length);
+        offsets[id + 1] = offset + length;
+        hashes[id] = hash;
+        return id;
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts every token id.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+}
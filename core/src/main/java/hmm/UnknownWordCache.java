@@ -0,0 +1,51 @@
+package hmm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This program includes a bounded least-recently-used cache of the emission
+ * scores of unknown words, keyed by word. It belongs to one decoder, like the
+ * rest of the decoder's buffers, so it is not thread-safe and worker threads
+ * never wait on each other to read it. The cache holds the scores of one
+ * {@link UnknownWords} at a time and is emptied when a different one is used.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class UnknownWordCache {
+    static final int CACHE_SIZE = 4096;  // unknown words whose score vectors are kept.
+
+    private final Map<String, double[]> scores;  // word -> score per tag, least recently used first
+    private UnknownWords owner;  // unknown words the cached scores were computed by.
+
+    UnknownWordCache() {
+        scores = new LinkedHashMap<String, double[]>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * @param unknownWords unknown word scores of the model being decoded with.
+     * @param word         a word that is not in the vocabulary.
+     * @return score per tag; callers must not modify it.
+     */
+    double[] emissions(UnknownWords unknownWords, String word) {
+        if (!unknownWords.hasSignatures()) {
+            return unknownWords.fallback();
+        }
+        if (owner != unknownWords) {
+            scores.clear();
+            owner = unknownWords;
+        }
+        double[] wordScores = scores.get(word);
+        if (wordScores == null) {
+            wordScores = unknownWords.emissions(word);
+            scores.put(word, wordScores);
+        }
+        return wordScores;
+    }
+}
@@ -0,0 +1,267 @@
+package hmm;
+
+import java.nio.DoubleBuffer;
+import java.util.*;
+
+/**
+ * This program includes the emission scores given to words that were never seen
+ * in training. With features on, a word is reduced to signatures built from its
+ * shape (capitalisation, digits, hyphens, punctuation) and its suffix, and the
+ * words seen only once in training (which behave like unseen words), as they
+ * appeared in the text, give each signature a score per tag:
+ *   log P(tag | signature) - log P(tag)
+ * which is log P(word | tag) up to a constant that is the same for every tag.
+ * Longer suffixes back off to shorter ones, then to the shape alone, then to the
+ * tag distribution of all words seen once. Tags that never emitted such a word
+ * get the penalty score. With features off every unknown word scores the penalty.
+ * The signatures are kept in a {@link WordIndex} and their scores in one buffer,
+ * so both can be read in place from a memory-mapped model file.
+ * The scores are not cached here, so any number of threads can read them;
+ * each decoder keeps its own {@link UnknownWordCache}.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class UnknownWords {
+    private static final int MAX_SUFFIX = 3;  // longest suffix used in a signature.
+    private static final int MIN_SIGNATURE_COUNT = 5;  // words seen once a signature needs to be used.
+
+    private final WordIndex signatures;  // signature <-> signature id
+    private final DoubleBuffer signatureScores;  // signature id x tag -> score
+    private final double[] fallback;  // scores when no signature matches.
+
+    /**
+     * Constructor that wraps already computed signature scores.
+     *
+     * @param signatures      signatures indexed by signature id.
+     * @param signatureScores row-major score per tag of every signature.
+     * @param fallback        score per tag when no signature matches.
+     */
+    UnknownWords(WordIndex signatures, DoubleBuffer signatureScores, double[] fallback) {
+        this.signatures = signatures;
+        this.signatureScores = signatureScores;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @param numTags number of tags.
+     * @return unknown words that score the penalty for every tag.
+     */
+    static UnknownWords penalty(int numTags) {
+        double[] fallback = new double[numTags];
+        Arrays.fill(fallback, CompiledModel.PENALTY_SCORE);
+        return new UnknownWords(new WordIndex(new String[0], false), DoubleBuffer.allocate(0), fallback);
+    }
+
+    /**
+     * Learns signature scores from the words seen exactly once in training.
+     *
+     * @param counts      raw POS-word counts.
+     * @param compiledTag counts tag id -> compiled tag id.
+     * @param numTags     number of compiled tags.
+     * @return unknown word scores.
+     */
+    static UnknownWords train(CorpusCounts counts, int[] compiledTag, int numTags) {
+        Vocabulary words = counts.getWords();
+        long[] wordTotals = new long[words.size()];
+        int[] wordTags = new int[words.size()];  // the tag of a word seen once.
+        long[] tagTotals = new long[numTags];
+        for (int row = 0; row < compiledTag.length; row++) {
+            CountTable counted = counts.observationRow(row);
+            tagTotals[compiledTag[row]] += counted.total();
+            for (int slot = 0; slot < counted.capacity(); slot++) {
+                int word = counted.keyAt(slot);
+                if (word >= 0) {
+                    wordTotals[word] += counted.countAt(slot);
+                    wordTags[word] = compiledTag[row];
+                }
+            }
+        }
+
+        // counts the tags of words seen once, under every signature of the word.
+        long[] onceTags = new long[numTags];
+        Map<String, long[]> signatureTags = new HashMap<>();
+        for (int word = 0; word < wordTotals.length; word++) {
+            if (wordTotals[word] == 1) {
+                onceTags[wordTags[word]]++;
+                for (String signature : signatures(counts.getSurface(word))) {
+                    signatureTags.computeIfAbsent(signature, s -> new long[numTags])[wordTags[word]]++;
+                }
+            }
+        }
+        long once = sum(onceTags);
+        long total = sum(tagTotals);
+        if (once == 0) {
+            return penalty(numTags);
+        }
+
+        double[] prior = new double[numTags];  // P(tag | word seen once)
+        for (int tag = 0; tag < numTags; tag++) {
+            prior[tag] = onceTags[tag] / (double) once;
+        }
+        List<String> kept = new ArrayList<>();
+        List<double[]> keptScores = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : signatureTags.entrySet()) {
+            long signatureTotal = sum(entry.getValue());
+            if (signatureTotal >= MIN_SIGNATURE_COUNT) {
+                kept.add(entry.getKey());
+                keptScores.add(scores(entry.getValue(), signatureTotal, prior, tagTotals, total));
+            }
+        }
+        double[] signatureScores = new double[kept.size() * numTags];
+        for (int signature = 0; signature < kept.size(); signature++) {
+            System.arraycopy(keptScores.get(signature), 0, signatureScores, signature * numTags, numTags);
+        }
+        return new UnknownWords(new WordIndex(kept.toArray(new String[0]), false), DoubleBuffer.wrap(signatureScores),
+                scores(new long[numTags], 0, prior, tagTotals, total));
+    }
+
+    /**
+     * Converts the tag counts of a signature into scores, smoothing towards the prior.
+     */
+    private static double[] scores(long[] tagCounts, long signatureTotal, double[] prior, long[] tagTotals, long total) {
+        double[] scores = new double[tagCounts.length];
+        for (int tag = 0; tag < scores.length; tag++) {
+            double given = (tagCounts[tag] + prior[tag]) / (signatureTotal + 1.0);
+            double score = Math.log(given) - Math.log(tagTotals[tag] / (double) total);
+            scores[tag] = given == 0 || tagTotals[tag] == 0 ? CompiledModel.PENALTY_SCORE
+                    : Math.max(CompiledModel.PENALTY_SCORE, score);
+        }
+        return scores;
+    }
+
+    /**
+     * Scores a word by its most specific known signature. Nothing is cached, so
+     * decoders look words up through an {@link UnknownWordCache}.
+     *
+     * @param word a word that is not in the vocabulary.
+     * @return score per tag; callers must not modify it.
+     */
+    public double[] emissions(String word) {
+        if (signatures.size() == 0) {
+            return fallback;
+        }
+        double[] scores = lookup(word);
+        if (scores == null && !word.equals(word.toLowerCase())) {
+            scores = lookup(word.toLowerCase());  // capitalised signatures too rare to be scored.
+        }
+        return scores != null ? scores : fallback;
+    }
+
+    /**
+     * @return scores of the most specific known signature of the word, or null.
+     */
+    private double[] lookup(String word) {
+        for (String signature : signatures(word)) {
+            int id = signatures.id(signature);
+            if (id >= 0) {
+                double[] scores = new double[fallback.length];
+                signatureEmissions(id, scores);
+                return scores;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return scores when no signature matches; callers must not modify it.
+     */
+    double[] fallback() {
+        return fallback;
+    }
+
+    /**
+     * @return approximate size of the signature tables, in bytes.
+     */
+    long estimatedBytes() {
+        return signatures.estimatedBytes() + 16 + 8L * signatureScores.capacity() + 16 + 8L * fallback.length;
+    }
+
+    /**
+     * @return whether any signature is scored, i.e. the scores were learned with features on.
+     */
+    boolean hasSignatures() {
+        return signatures.size() > 0;
+    }
+
+    /**
+     * @return signatures indexed by signature id.
+     */
+    WordIndex signatures() {
+        return signatures;
+    }
+
+    /**
+     * Copies the score per tag of a signature.
+     *
+     * @param signature signature id.
+     * @param scoresOut receives one score per tag.
+     */
+    void signatureEmissions(int signature, double[] scoresOut) {
+        signatureScores.get(signature * fallback.length, scoresOut, 0, fallback.length);
+    }
+
+    /**
+     * Builds the signatures of a word, most specific first: shape with the last
+     * three, two and one characters, then the shape alone.
+     *
+     * @param word word.
+     * @return signatures.
+     */
+    static List<String> signatures(String word) {
+        String shape = shape(word);
+        List<String> signatures = new ArrayList<>(MAX_SUFFIX + 1);
+        for (int length = MAX_SUFFIX; length >= 1; length--) {
+            if (word.length() > length) {
+                signatures.add(shape + "|" + word.substring(word.length() - length));
+            }
+        }
+        signatures.add(shape);
+        return signatures;
+    }
+
+    /**
+     * @param word word.
+     * @return shape of the word: capitalisation, digits, hyphens and punctuation.
+     */
+    static String shape(String word) {
+        boolean letter = false, digit = false, hyphen = false, upperFirst = false, lower = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (Character.isLetter(c)) {
+                letter = true;
+                if (Character.isUpperCase(c) && i == 0) {
+                    upperFirst = true;
+                }
+                if (Character.isLowerCase(c)) {
+                    lower = true;
+                }
+            }
+            else if (Character.isDigit(c)) {
+                digit = true;
+            }
+            else if (c == '-') {
+                hyphen = true;
+            }
+        }
+        if (!letter && !digit) {
+            return "punct";
+        }
+        StringBuilder shape = new StringBuilder(!letter ? "num" : upperFirst ? (lower ? "cap" : "upper") : "lower");
+        if (letter && digit) {
+            shape.append("-alnum");
+        }
+        if (hyphen) {
+            shape.append("-hyphen");
+        }
+        return shape.toString();
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,80 @@
+package hmm;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This program includes the {@link ScoreKernels} on the JDK Vector API: each
+ * step works on as many doubles at once as the CPU's widest vector holds (e.g.
+ * 4 with AVX2, 8 with AVX-512), with a plain loop for the rest of the row.
+ * Only loaded when the JVM runs with --add-modules jdk.incubator.vector.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class VectorScoreKernels implements ScoreKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Constructor that checks the CPU has vectors of more than one double.
+     *
+     * @throws UnsupportedOperationException if it does not, so the scalar kernels are used instead.
+     */
+    VectorScoreKernels() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("no vectors wider than one double");
+        }
+    }
+
+    @Override
+    public void maxPlus(double score, double[] row, int rowOffset, double[] acc, int accOffset, int n) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, row, rowOffset + j).add(score)
+                    .max(DoubleVector.fromArray(SPECIES, acc, accOffset + j))
+                    .intoArray(acc, accOffset + j);
+        }
+        for (; j < n; j++) {
+            double candidate = score + row[rowOffset + j];
+            if (candidate > acc[accOffset + j]) {
+                acc[accOffset + j] = candidate;
+            }
+        }
+    }
+
+    @Override
+    public void multiplyAdd(double weight, double[] row, int rowOffset, double[] acc, int n) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+            // multiply then add (not fma), so the sums match the scalar kernels exactly.
+            DoubleVector.fromArray(SPECIES, row, rowOffset + j).mul(weight)
+                    .add(DoubleVector.fromArray(SPECIES, acc, j))
+                    .intoArray(acc, j);
+        }
+        for (; j < n; j++) {
+            acc[j] += weight * row[rowOffset + j];
+        }
+    }
+
+    @Override
+    public double dot(double[] row, int rowOffset, double[] vector, int n) {
+        int j = 0;
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+            sums = DoubleVector.fromArray(SPECIES, row, rowOffset + j)
+                    .mul(DoubleVector.fromArray(SPECIES, vector, j))
+                    .add(sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++) {
+            sum += row[rowOffset + j] * vector[j];
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "vector (" + SPECIES.length() + " doubles)";
+    }
+}
@@ -0,0 +1,433 @@
+package hmm;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * This program includes a reusable Viterbi decoder that runs on a compiled
+ * Hidden Markov Model. The score vectors, word ids and back-pointer matrix are
+ * preallocated and only grow when a longer sentence (or a bigger tag set) arrives,
+ * so tagging into a caller-supplied buffer does not allocate once warmed up.
+ * A decoder is not thread-safe; keep one per thread.
+ *
+ * By default every successor of every live state is scored. A decoder can instead
+ * be built to prune: it can keep only the best beamWidth states at each word, drop
+ * states scoring more than beamThreshold below the best one, and only consider the
+ * tags that emitted the current word in training (unknown words still consider
+ * every tag). Pruned decoding is faster but may return a different path; the
+ * expansion counters measure how much work each setting does.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class ViterbiDecoder {
+    private final int beamWidth;  // states kept per word, 0 keeps every state.
+    private final double beamThreshold;  // log-score distance from the best state beyond which states are dropped.
+    private final boolean emittingTagsOnly;  // only consider tags that emitted the word in training.
+
+    private double[] currScores = new double[0];  // scores of the states at the current word.
+    private double[] nextScores = new double[0];  // scores of the states at the next word.
+    private double[] emission = new double[0];  // emission score of every tag for the current word.
+    private double[] scratch = new double[0];  // live scores, reordered while finding the beam cut-off.
+    private int[] live = new int[0];  // ids of the states still alive at the current word, ascending.
+    private int[] allTags = new int[0];  // 0..numTags-1, the candidates when every tag is considered.
+    private int[] emittedTags = new int[0];  // ids of the tags that emitted the current word in training, ascending.
+    private int[] backtrack = new int[0];  // words x tags, previous state each state came from.
+    private int[] wordIds = new int[0];  // word ids of the sentence being tagged.
+    private int[] tagIds = new int[0];  // tag ids of the sentence being tagged.
+    private double[][] unknownScores = new double[0][];  // emission scores of the unknown words of the sentence.
+    private final UnknownWordCache unknownWords = new UnknownWordCache();  // scores of recently seen unknown words.
+
+    private long sentencesDecoded;  // sentences decoded since the last reset.
+    private long wordsDecoded;  // words decoded since the last reset.
+    private long statesExpanded;  // live states whose successors were scored.
+    private long transitionsScored;  // (state, successor) pairs scored.
+    private long unknownWordsDecoded;  // words never seen in training, scored by the penalty or their signature.
+
+    /**
+     * Constructor for an exhaustive decoder that scores every successor of every live state.
+     */
+    public ViterbiDecoder() {
+        this(0, Double.POSITIVE_INFINITY, false);
+    }
+
+    /**
+     * Constructor for a pruning decoder.
+     *
+     * @param beamWidth        states kept per word (states tied with the last one are kept too), 0 for no limit.
+     * @param beamThreshold    drop states scoring more than this below the best state, +Infinity for no limit.
+     * @param emittingTagsOnly only consider tags that emitted the current word in training.
+     */
+    public ViterbiDecoder(int beamWidth, double beamThreshold, boolean emittingTagsOnly) {
+        if (beamWidth < 0) {
+            throw new IllegalArgumentException("beam width must not be negative: " + beamWidth);
+        }
+        if (!(beamThreshold >= 0)) {
+            throw new IllegalArgumentException("beam threshold must not be negative: " + beamThreshold);
+        }
+        this.beamWidth = beamWidth;
+        this.beamThreshold = beamThreshold;
+        this.emittingTagsOnly = emittingTagsOnly;
+    }
+
+    /**
+     * Tags a sentence, writing the tags into a caller-supplied buffer.
+     *
+     * @param model    compiled model to decode with.
+     * @param words    array of words.
+     * @param tagsOut  receives one tag per word; must be at least words.length long.
+     */
+    public void tag(CompiledModel model, String[] words, String[] tagsOut) {
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        int length = words.length;
+        lookupWords(model, words);
+        decode(model, wordIds, unknownScores, length, tagIds, startNanos);
+        for (int i = 0; i < length; i++) {
+            tagsOut[i] = model.tag(tagIds[i]);
+        }
+    }
+
+    /**
+     * Tags a sentence, writing tag ids into a caller-supplied buffer.
+     *
+     * @param model    compiled model to decode with.
+     * @param words    array of words.
+     * @param tagIdsOut receives one tag id per word; must be at least words.length long.
+     */
+    public void tag(CompiledModel model, String[] words, int[] tagIdsOut) {
+        long startNanos = ModelMetrics.ENABLED ? System.nanoTime() : 0L;
+        lookupWords(model, words);
+        decode(model, wordIds, unknownScores, words.length, tagIdsOut, startNanos);
+    }
+
+    /**
+     * Resolves the words of a sentence to word ids, and the unknown ones to their emission scores.
+     *
+     * @param model compiled model.
+     * @param words array of words.
+     */
+    private void lookupWords(CompiledModel model, String[] words) {
+        ensureSentenceCapacity(words.length);
+        for (int i = 0; i < words.length; i++) {
+            int word = model.wordId(words[i]);
+            wordIds[i] = word;
+            unknownScores[i] = model.isUnknown(word) ? unknownWords.emissions(model.getUnknownWords(), words[i]) : null;
+        }
+    }
+
+    /**
+     * Performs Viterbi decoding to find the best sequence of tags for a sequence of word ids.
+     * Unknown word ids score like a word that matches no unknown word signature.
+     *
+     * @param model     compiled model to decode with.
+     * @param words     word ids, as returned by {@link CompiledModel#wordId(String)}.
+     * @param length    number of words to tag.
+     * @param tagIdsOut receives one tag id per word.
+     */
+    public void decode(CompiledModel model, int[] words, int length, int[] tagIdsOut) {
+        decode(model, words, null, length, tagIdsOut, ModelMetrics.ENABLED ? System.nanoTime() : 0L);
+    }
+
+    /**
+     * Performs Viterbi decoding to find the best sequence of tags for a sequence of word ids.
+     *
+     * @param model         compiled model to decode with.
+     * @param words         word ids, as returned by {@link CompiledModel#wordId(String)}.
+     * @param unknownScores emission scores of the unknown words by position, or null to use the fallback.
+     * @param length        number of words to tag.
+     * @param tagIdsOut     receives one tag id per word.
+     * @param startNanos    System.nanoTime() when tagging the sentence started, if {@link ModelMetrics#ENABLED}.
+     */
+    private void decode(CompiledModel model, int[] words, double[][] unknownScores, int length, int[] tagIdsOut,
+                        long startNanos) {
+        if (length == 0) {
+            return;
+        }
+        long expandedBefore = statesExpanded;
+        long unknownBefore = unknownWordsDecoded;
+        int numTags = model.numTags();
+        ensureCapacity(length, numTags);
+
+        // keeps track of scores, unreachable states score -Infinity.
+        double[] currScores = this.currScores;
+        double[] nextScores = this.nextScores;
+        Arrays.fill(currScores, 0, numTags, Double.NEGATIVE_INFINITY);
+        currScores[CompiledModel.START] = 0.0;
+        live[0] = CompiledModel.START;
+        int liveCount = 1;
+
+        // iterates through sentence word by word.
+        for (int i = 0; i < length; i++) {
+            Arrays.fill(nextScores, 0, numTags, Double.NEGATIVE_INFINITY);
+            int word = words[i];
+            double[] emission = this.emission;
+            if (!model.isUnknown(word)) {
+                model.emissions(word, emission);
+            }
+            else if (unknownScores != null && unknownScores[i] != null) {
+                emission = unknownScores[i];
+                unknownWordsDecoded++;
+            }
+            else {
+                emission = model.getUnknownWords().fallback();
+                unknownWordsDecoded++;
+            }
+            boolean reached = false;
+            int emitted = emittingTagsOnly ? emittedTags(model, word) : 0;
+            if (emitted > 0) {
+                reached = expand(model, currScores, liveCount, nextScores, emission, i, emittedTags, 0, emitted);
+            }
+            // every tag is considered when pruning is off, the word is unknown, or none of its tags is reachable.
+            if (!reached) {
+                expand(model, currScores, liveCount, nextScores, emission, i, allTags, 0, numTags);
+            }
+            wordsDecoded++;
+
+            liveCount = collectLive(nextScores, numTags);
+            double[] swap = currScores;
+            currScores = nextScores;
+            nextScores = swap;
+        }
+        sentencesDecoded++;
+
+        // finds the state with the highest score at the last observation.
+        int currentBestState = -1;
+        for (int k = 0; k < liveCount; k++) {
+            int tag = live[k];
+            if (currentBestState == -1 || currScores[tag] > currScores[currentBestState]) {
+                currentBestState = tag;
+            }
+        }
+        if (currentBestState == -1) {
+            throw new NoSuchElementException("no tag sequence reaches the end of the sentence");
+        }
+
+        // uses backtrack to backtrace from end to start.
+        for (int i = length - 1; i >= 0; i--) {
+            tagIdsOut[i] = currentBestState;
+            currentBestState = backtrack[i * numTags + currentBestState];
+        }
+
+        // compiled away unless metrics are switched on.
+        if (ModelMetrics.ENABLED) {
+            ModelMetrics.get().sentenceDecoded(length, unknownWordsDecoded - unknownBefore,
+                    statesExpanded - expandedBefore, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Copies the ids of the tags that emitted a word in training into {@link #emittedTags}.
+     *
+     * @return number of tags.
+     */
+    private int emittedTags(CompiledModel model, int word) {
+        int from = model.emittingOffset(word);
+        int count = model.emittingOffset(word + 1) - from;
+        for (int k = 0; k < count; k++) {
+            emittedTags[k] = model.emittingTag(from + k);
+        }
+        return count;
+    }
+
+    /**
+     * Scores the candidate successors of every live state for one word.
+     *
+     * @param candidates tag ids to consider, ascending, between from and to.
+     * @return true if at least one candidate was reached.
+     */
+    private boolean expand(CompiledModel model, double[] currScores, int liveCount, double[] nextScores,
+                           double[] emission, int position, int[] candidates, int from, int to) {
+        int numTags = model.numTags();
+        double[] transitions = model.transitions();
+        int backtrackRow = position * numTags;
+        boolean reached = false;
+
+        // iterates through every live current state
+        for (int k = 0; k < liveCount; k++) {
+            int currState = live[k];
+            double currScore = currScores[currState];
+            int transitionRow = currState * numTags;
+            statesExpanded++;
+
+            // goes into the transitions row of the current state we are on
+            for (int c = from; c < to; c++) {
+                int nextState = candidates[c];
+                double transition = transitions[transitionRow + nextState];
+                // currState never moves to nextState (e.g. punctuation at the end of a sentence).
+                if (transition == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                transitionsScored++;
+                reached = true;
+                // calculates score at observation i, unseen words carry the penalty score.
+                double nextScore = currScore + transition + emission[nextState];
+                if (nextScore > nextScores[nextState]) {
+                    nextScores[nextState] = nextScore;
+                    backtrack[backtrackRow + nextState] = currState;  // update back-pointer
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Collects the reached states into the live list, dropping the ones outside the beam.
+     *
+     * @return number of live states.
+     */
+    private int collectLive(double[] scores, int numTags) {
+        int liveCount = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int tag = 0; tag < numTags; tag++) {
+            if (scores[tag] != Double.NEGATIVE_INFINITY) {
+                live[liveCount++] = tag;
+                best = Math.max(best, scores[tag]);
+            }
+        }
+        double cutoff = best - beamThreshold;
+        if (beamWidth > 0 && liveCount > beamWidth) {
+            for (int k = 0; k < liveCount; k++) {
+                scratch[k] = scores[live[k]];
+            }
+            cutoff = Math.max(cutoff, kthLargest(scratch, liveCount, beamWidth));
+        }
+        if (cutoff == Double.NEGATIVE_INFINITY) {
+            return liveCount;
+        }
+        int kept = 0;
+        for (int k = 0; k < liveCount; k++) {
+            int tag = live[k];
+            if (scores[tag] >= cutoff) {
+                live[kept++] = tag;
+            }
+            else {
+                scores[tag] = Double.NEGATIVE_INFINITY;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the k-th largest of the first n values by quickselect, reordering them.
+     */
+    private static double kthLargest(double[] values, int n, int k) {
+        int target = k - 1;
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] > pivot) {
+                    i++;
+                }
+                while (values[j] < pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                high = j;
+            }
+            else if (target >= i) {
+                low = i;
+            }
+            else {
+                break;
+            }
+        }
+        return values[target];
+    }
+
+    /**
+     * @return sentences decoded since the last {@link #resetStatistics()}.
+     */
+    public long getSentencesDecoded() {
+        return sentencesDecoded;
+    }
+
+    /**
+     * @return words decoded since the last {@link #resetStatistics()}.
+     */
+    public long getWordsDecoded() {
+        return wordsDecoded;
+    }
+
+    /**
+     * @return live states whose successors were scored since the last {@link #resetStatistics()}.
+     */
+    public long getStatesExpanded() {
+        return statesExpanded;
+    }
+
+    /**
+     * @return (state, successor) pairs scored since the last {@link #resetStatistics()}.
+     */
+    public long getTransitionsScored() {
+        return transitionsScored;
+    }
+
+    /**
+     * @return words never seen in training decoded since the last {@link #resetStatistics()}.
+     */
+    public long getUnknownWordsDecoded() {
+        return unknownWordsDecoded;
+    }
+
+    /**
+     * Sets every expansion counter back to zero.
+     */
+    public void resetStatistics() {
+        sentencesDecoded = 0;
+        wordsDecoded = 0;
+        statesExpanded = 0;
+        transitionsScored = 0;
+        unknownWordsDecoded = 0;
+    }
+
+    /**
+     * Grows the per-word buffers so a sentence of the given length fits.
+     *
+     * @param length number of words.
+     */
+    private void ensureSentenceCapacity(int length) {
+        if (wordIds.length < length) {
+            int capacity = Math.max(length, wordIds.length * 2);
+            wordIds = new int[capacity];
+            tagIds = new int[capacity];
+            unknownScores = new double[capacity][];
+        }
+    }
+
+    /**
+     * Grows the score vectors and back-pointer matrix so a sentence of the given
+     * length over the given number of tags fits.
+     *
+     * @param length  number of words.
+     * @param numTags number of tags.
+     */
+    private void ensureCapacity(int length, int numTags) {
+        if (currScores.length < numTags) {
+            currScores = new double[numTags];
+            nextScores = new double[numTags];
+            emission = new double[numTags];
+            scratch = new double[numTags];
+            live = new int[numTags];
+            allTags = new int[numTags];
+            emittedTags = new int[numTags];
+            for (int tag = 0; tag < numTags; tag++) {
+                allTags[tag] = tag;
+            }
+        }
+        if (backtrack.length < length * numTags) {
+            backtrack = new int[Math.max(length * numTags, backtrack.length * 2)];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hmm;
+
+import java.util.*;
+
+/**
+ * This program includes a vocabulary that interns strings (words or tags)
+ * to dense int ids, starting at 0 in the order they are first added.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+public class Vocabulary {
+    private final Map<String, Integer> ids = new HashMap<>();  // string -> id
+    private final List<String> strings = new ArrayList<>();  // id -> string
+
+    /**
+     * Interns a string.
+     *
+     * @param string string to intern.
+     * @return id of the string, a new id if it was never added before.
+     */
+    public int add(String string) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = strings.size();
+            ids.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    /**
+     * @param string string to look up.
+     * @return id of the string, or -1 if it was never added.
+     */
+    public int id(String string) {
+        Integer id = ids.get(string);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id id.
+     * @return string with that id.
+     */
+    public String get(int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * @return number of strings.
+     */
+    public int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,390 @@
+package hmm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This program includes the vocabulary of a compiled model: every word is kept
+ * once as UTF-8 bytes, all words one after the other, and a word's id is its
+ * position. Words are found through an open-addressing table of ids, or, for
+ * words stored in sorted order, by binary search without any table at all.
+ * Either way a word costs a few bytes instead of a HashMap entry, a boxed
+ * Integer and a String of its own.
+ *
+ * The bytes, offsets and table are buffers, so an index written to a model file
+ * can be read straight from the memory-mapped file: a word is looked up by
+ * comparing it with the stored bytes in place, and no String is decoded until
+ * {@link #get(int)} asks for one.
+ *
+ * A hashed index can grow: {@link #append(Vocabulary)} adds new words after the
+ * existing ones and returns a larger index, writing into the same tables while
+ * they have room. An older index over the same tables keeps working, since it
+ * ignores ids past its own size, so a model can keep decoding while the next one
+ * is built.
+ *
+ * @author Johan Cruz Hernandez, Samuel Crombie
+ * Dartmouth College, CS 10, Spring 2021
+ */
+final class WordIndex {
+    private static final int EMPTY = -1;  // marks an unused slot.
+
+    private final ByteBuffer bytes;  // UTF-8 bytes of every word, one after the other
+    private final IntBuffer offsets;  // word id -> start of the word in bytes; offsets[size] is the end
+    private final IntBuffer slots;  // String hash -> word id, null when words are found by binary search
+    private final int size;  // number of words.
+    private final int[] written;  // words in the tables, shared by every index over the same tables
+
+    /**
+     * Constructor that indexes words by their position.
+     *
+     * @param words  words indexed by word id, without duplicates.
+     * @param sorted the words are in ascending {@link #compare(String, String)} order and
+     *               are found by binary search instead of a hash table.
+     * @throws IllegalArgumentException if sorted words are not in order.
+     */
+    WordIndex(String[] words, boolean sorted) {
+        size = words.length;
+        byte[][] encoded = new byte[size][];
+        int[] starts = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            if (sorted && id > 0 && compare(words[id - 1], words[id]) >= 0) {
+                throw new IllegalArgumentException("words are not sorted: " + words[id - 1] + ", " + words[id]);
+            }
+            encoded[id] = words[id].getBytes(StandardCharsets.UTF_8);
+            starts[id + 1] = starts[id] + encoded[id].length;
+        }
+        byte[] all = new byte[starts[size]];
+        for (int id = 0; id < size; id++) {
+            System.arraycopy(encoded[id], 0, all, starts[id], encoded[id].length);
+        }
+        bytes = ByteBuffer.wrap(all);
+        offsets = IntBuffer.wrap(starts);
+        if (sorted) {
+            slots = null;
+        }
+        else {
+            int[] table = newTable(size);
+            for (int id = 0; id < size; id++) {
+                insert(table, words[id].hashCode(), id);
+            }
+            slots = IntBuffer.wrap(table);
+        }
+        written = new int[] {size};
+    }
+
+    /**
+     * Constructor that wraps existing tables.
+     */
+    private WordIndex(ByteBuffer bytes, IntBuffer offsets, IntBuffer slots, int size, int[] written) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.slots = slots;
+        this.size = size;
+        this.written = written;
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)} without copying it:
+     * the index keeps views of the buffer, e.g. of a memory-mapped model file.
+     *
+     * @param buffer   buffer positioned at the index; moved past it.
+     * @param size     number of words.
+     * @param numSlots number of hash slots, 0 for sorted words.
+     * @param numBytes number of UTF-8 bytes of all words.
+     * @return index over the buffer.
+     */
+    static WordIndex read(ByteBuffer buffer, int size, int numSlots, int numBytes) {
+        IntBuffer offsets = slice(buffer, (size + 1) * Integer.BYTES).asIntBuffer();
+        IntBuffer slots = numSlots == 0 ? null : slice(buffer, numSlots * Integer.BYTES).asIntBuffer();
+        return new WordIndex(slice(buffer, numBytes), offsets, slots, size, new int[] {size});
+    }
+
+    /**
+     * Builds the index of a vocabulary that starts with this index's words, by
+     * appending the words after them. When this is the newest index over its tables
+     * and they have room, the words are written into the same tables; otherwise the
+     * tables are copied into ones twice as large. Appending to the same tables is not
+     * thread-safe, but looking words up in an older index while appending is.
+     *
+     * @param words vocabulary whose first size() words are the words of this index.
+     * @return index of every word of the vocabulary; this index if it has no new words.
+     * @throws IllegalStateException if the words are sorted, which appending would break.
+     */
+    WordIndex append(Vocabulary words) {
+        int newSize = words.size();
+        if (newSize == size) {
+            return this;
+        }
+        if (slots == null) {
+            throw new IllegalStateException("words cannot be appended to a sorted index");
+        }
+        byte[][] encoded = new byte[newSize - size][];
+        int newBytes = numBytes();
+        for (int id = size; id < newSize; id++) {
+            encoded[id - size] = words.get(id).getBytes(StandardCharsets.UTF_8);
+            newBytes += encoded[id - size].length;
+        }
+
+        ByteBuffer newBytesBuffer = bytes;
+        IntBuffer newOffsets = offsets;
+        IntBuffer newSlots = slots;
+        int[] newWritten = written;
+        boolean inPlace = written[0] == size && bytes.hasArray() && !bytes.isReadOnly()
+                && bytes.capacity() >= newBytes && offsets.capacity() > newSize && newSize * 2 <= slots.capacity();
+        if (!inPlace) {
+            // doubles the tables, so appending a word costs amortised constant time.
+            byte[] copiedBytes = new byte[Math.max(newBytes, 2 * numBytes())];
+            bytes.get(0, copiedBytes, 0, numBytes());
+            int[] copiedOffsets = new int[Math.max(newSize + 1, 2 * (size + 1))];
+            offsets.get(0, copiedOffsets, 0, size + 1);
+            int[] table = newTable(copiedOffsets.length - 1);
+            for (int id = 0; id < size; id++) {
+                insert(table, hash(id), id);
+            }
+            newBytesBuffer = ByteBuffer.wrap(copiedBytes);
+            newOffsets = IntBuffer.wrap(copiedOffsets);
+            newSlots = IntBuffer.wrap(table);
+            newWritten = new int[] {size};
+        }
+        int[] table = newSlots.array();
+        int end = newOffsets.get(size);
+        for (int id = size; id < newSize; id++) {
+            byte[] word = encoded[id - size];
+            newBytesBuffer.put(end, word);
+            end += word.length;
+            newOffsets.put(id + 1, end);
+            // the bytes are in place before the id is, so a reader that finds the id can compare them.
+            insert(table, words.get(id).hashCode(), id);
+        }
+        newWritten[0] = newSize;
+        return new WordIndex(newBytesBuffer, newOffsets, newSlots, newSize, newWritten);
+    }
+
+    /**
+     * Writes the offsets, the hash slots (if any) and the bytes of every word.
+     *
+     * @param output stream to write to.
+     * @throws IOException checks that the stream can be written.
+     */
+    void write(DataOutputStream output) throws IOException {
+        for (int id = 0; id <= size; id++) {
+            output.writeInt(offsets.get(id));
+        }
+        for (int slot = 0; slot < numSlots(); slot++) {
+            // a newer index may have added ids to shared tables; they are not part of this one.
+            int id = slots.get(slot);
+            output.writeInt(id < size ? id : EMPTY);
+        }
+        for (int position = 0; position < numBytes(); position++) {
+            output.writeByte(bytes.get(position));
+        }
+    }
+
+    /**
+     * @return number of hash slots written by {@link #write(DataOutputStream)}, 0 for sorted words.
+     */
+    int numSlots() {
+        return slots == null ? 0 : slots.capacity();
+    }
+
+    /**
+     * @return number of UTF-8 bytes of all words.
+     */
+    int numBytes() {
+        return offsets.get(size);
+    }
+
+    /**
+     * @param word word.
+     * @return id of the word, or -1 if it is not in the vocabulary.
+     */
+    int id(String word) {
+        if (slots == null) {
+            return search(word);
+        }
+        int mask = slots.capacity() - 1;
+        int slot = slotOf(word.hashCode(), mask);
+        for (int id = slots.get(slot); id != EMPTY; id = slots.get(slot)) {
+            if (id < size && compare(id, word) == 0) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id word id.
+     * @return the word.
+     */
+    String get(int id) {
+        byte[] word = new byte[offsets.get(id + 1) - offsets.get(id)];
+        bytes.get(offsets.get(id), word);
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return number of words.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return whether words are stored sorted and found by binary search.
+     */
+    boolean isSorted() {
+        return slots == null;
+    }
+
+    /**
+     * @return approximate size of the index's tables, in bytes, with 16-byte array headers.
+     */
+    long estimatedBytes() {
+        long tables = 16 + bytes.capacity() + 16 + 4L * offsets.capacity();
+        return slots == null ? tables : tables + 16 + 4L * slots.capacity();
+    }
+
+    /**
+     * Compares two words by Unicode code point, which is the order of their UTF-8
+     * bytes and the order sorted words are stored in.
+     *
+     * @param a word.
+     * @param b word.
+     * @return negative, zero or positive as a is before, equal to or after b.
+     */
+    static int compare(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length()) {
+            int difference = a.codePointAt(i) - b.codePointAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+            i += Character.charCount(a.codePointAt(i));
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Finds a word in sorted order.
+     */
+    private int search(String word) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, word);
+            if (comparison < 0) {
+                low = middle + 1;
+            }
+            else if (comparison > 0) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a stored word with a word by code point, decoding the stored UTF-8 in place.
+     */
+    private int compare(int id, String word) {
+        int position = offsets.get(id);
+        int end = offsets.get(id + 1);
+        int i = 0;
+        while (position < end && i < word.length()) {
+            int lead = bytes.get(position) & 0xFF;
+            int stored = lead;
+            int length = 1;
+            if (lead >= 0x80) {
+                // 110xxxxx, 1110xxxx or 11110xxx followed by 10xxxxxx continuation bytes.
+                length = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+                stored = lead & (0x7F >> length);
+                for (int k = 1; k < length; k++) {
+                    stored = stored << 6 | bytes.get(position + k) & 0x3F;
+                }
+            }
+            int given = word.codePointAt(i);
+            if (stored != given) {
+                return stored - given;
+            }
+            position += length;
+            i += Character.charCount(given);
+        }
+        return (position < end ? 1 : 0) - (i < word.length() ? 1 : 0);
+    }
+
+    /**
+     * Computes {@link String#hashCode()} of a stored word from its UTF-8 bytes.
+     */
+    private int hash(int id) {
+        int hash = 0;
+        int end = offsets.get(id + 1);
+        for (int position = offsets.get(id); position < end; ) {
+            int lead = bytes.get(position) & 0xFF;
+            int codePoint = lead;
+            int length = 1;
+            if (lead >= 0x80) {
+                length = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+                codePoint = lead & (0x7F >> length);
+                for (int k = 1; k < length; k++) {
+                    codePoint = codePoint << 6 | bytes.get(position + k) & 0x3F;
+                }
+            }
+            // a String hashes UTF-16 chars, so a supplementary code point counts as two.
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                hash = 31 * hash + Character.highSurrogate(codePoint);
+                hash = 31 * hash + Character.lowSurrogate(codePoint);
+            }
+            else {
+                hash = 31 * hash + codePoint;
+            }
+            position += length;
+        }
+        return hash;
+    }
+
+    /**
+     * @return an empty hash table for the given number of words, at most half full.
+     */
+    private static int[] newTable(int words) {
+        int[] table = new int[Math.max(2, Integer.highestOneBit(Math.max(1, words)) * 4)];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * Puts a word id into the first free slot from its hash.
+     */
+    private static void insert(int[] table, int hash, int id) {
+        int mask = table.length - 1;
+        int slot = slotOf(hash, mask);
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id;
+    }
+
+    /**
+     * Cuts the next length bytes off a buffer as a buffer of their own.
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Spreads a String hash over the table.
+     */
+    private static int slotOf(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ h >>> 16) & mask;
+    }
+}